@@ -0,0 +1,84 @@
+package com.enterprise.km.config;
+
+import com.enterprise.km.security.ContextPropagatingTaskDecorator;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ChatExecutorConfig {
+
+    @Value("${app.chat.preparation.pool-size:6}")
+    private int preparationPoolSize;
+
+    @Value("${app.chat.blocking.threads:6}")
+    private int blockingThreads;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
+
+    /**
+     * Every chat-prep and chat-db thread can hold a connection at once, so together they must
+     * leave part of the Hikari pool to request threads, ingestion workers and schedulers.
+     */
+    @PostConstruct
+    void checkConnectionBudget() {
+        if (preparationPoolSize + blockingThreads >= connectionPoolSize) {
+            throw new IllegalStateException("app.chat.preparation.pool-size (" + preparationPoolSize
+                    + ") + app.chat.blocking.threads (" + blockingThreads
+                    + ") must stay below spring.datasource.hikari.maximum-pool-size (" + connectionPoolSize + ")");
+        }
+    }
+
+    /**
+     * Bounded pool for the chat preparation stage (history load, user-message save, retrieval).
+     * When saturated the calling thread runs the task itself instead of queueing unboundedly.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor chatPreparationExecutor(
+            @Value("${app.chat.preparation.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(preparationPoolSize);
+        executor.setMaxPoolSize(preparationPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("chat-prep-");
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Bounded scheduler for the blocking JPA work of streaming chats (conversation lookup,
+     * message writes); see {@link #checkConnectionBudget()}.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler chatBlockingScheduler(
+            @Value("${app.chat.blocking.queue-capacity:1000}") int queueCapacity) {
+        return Schedulers.newBoundedElastic(blockingThreads, queueCapacity, "chat-db");
+    }
+
+    /**
+     * Small pool for background conversation summarization. Compactions that do not fit
+     * are dropped and retried after the next turn.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor conversationSummaryExecutor(
+            @Value("${app.chat.memory.summary-pool-size:2}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("chat-summary-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,35 @@
+package com.enterprise.km.config;
+
+import com.enterprise.km.vectorstore.EmbeddedHnswVectorStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Paths;
+
+/**
+ * Replaces pgvector with the in-process HNSW store when app.vector-store.type=embedded.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.vector-store.type", havingValue = "embedded")
+public class EmbeddedVectorStoreConfig {
+
+    @Bean
+    @Primary
+    public EmbeddedHnswVectorStore embeddedHnswVectorStore(
+            EmbeddingModel embeddingModel,
+            ObjectMapper objectMapper,
+            @Value("${app.vector-store.embedded.data-dir:data/vector-store}") String dataDir,
+            @Value("${spring.ai.vectorstore.pgvector.dimensions:768}") int dimensions,
+            @Value("${app.vector-store.embedded.m:16}") int m,
+            @Value("${app.vector-store.embedded.ef-construction:100}") int efConstruction,
+            @Value("${app.vector-store.embedded.ef-search:64}") int efSearch,
+            @Value("${app.vector-store.embedded.compact-threshold:0.2}") double compactThreshold) {
+        return new EmbeddedHnswVectorStore(embeddingModel, Paths.get(dataDir), dimensions, m,
+                efConstruction, efSearch, compactThreshold, objectMapper);
+    }
+}
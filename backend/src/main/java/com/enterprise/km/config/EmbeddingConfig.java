@@ -0,0 +1,60 @@
+package com.enterprise.km.config;
+
+import com.enterprise.km.service.BatchingEmbeddingModel;
+import com.enterprise.km.service.CachingEmbeddingModel;
+import com.enterprise.km.service.ChunkEmbeddingStore;
+import com.enterprise.km.service.DeduplicatingEmbeddingModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+@Configuration
+public class EmbeddingConfig {
+
+    /**
+     * Collects concurrent embedding requests into batched Ollama calls.
+     */
+    @Bean
+    public BatchingEmbeddingModel batchingEmbeddingModel(
+            OllamaEmbeddingModel ollamaEmbeddingModel,
+            MeterRegistry meterRegistry,
+            @Value("${app.embedding-batch.max-size:32}") int maxBatchSize,
+            @Value("${app.embedding-batch.max-wait:PT0.003S}") Duration maxWait,
+            @Value("${app.embedding-batch.max-concurrent-batches:2}") int maxConcurrentBatches) {
+        return new BatchingEmbeddingModel(ollamaEmbeddingModel, maxBatchSize, maxWait, maxConcurrentBatches,
+                meterRegistry);
+    }
+
+    /**
+     * Reuses stored vectors for chunk texts seen before (same content hash and model).
+     */
+    @Bean
+    public DeduplicatingEmbeddingModel deduplicatingEmbeddingModel(
+            BatchingEmbeddingModel batchingEmbeddingModel,
+            ChunkEmbeddingStore chunkEmbeddingStore,
+            MeterRegistry meterRegistry,
+            @Value("${spring.ai.ollama.embedding.options.model}") String modelName) {
+        return new DeduplicatingEmbeddingModel(batchingEmbeddingModel, chunkEmbeddingStore, modelName, meterRegistry);
+    }
+
+    /**
+     * Primary EmbeddingModel seen by the vector store: query embeddings are served from
+     * a tenant-aware cache, ingestion batches are deduplicated by content hash, and the
+     * rest falls through to the batching dispatcher and Ollama.
+     */
+    @Bean
+    @Primary
+    public CachingEmbeddingModel cachingEmbeddingModel(
+            DeduplicatingEmbeddingModel deduplicatingEmbeddingModel,
+            MeterRegistry meterRegistry,
+            @Value("${spring.ai.ollama.embedding.options.model}") String modelName,
+            @Value("${app.embedding-cache.max-size:10000}") int maxSize,
+            @Value("${app.embedding-cache.ttl:PT6H}") Duration ttl) {
+        return new CachingEmbeddingModel(deduplicatingEmbeddingModel, modelName, maxSize, ttl, meterRegistry);
+    }
+}
@@ -1,6 +1,7 @@
 package com.enterprise.km.config;
 
 import com.enterprise.km.dto.ApiResponse;
+import com.enterprise.km.service.GenerationRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.validation.FieldError;
@@ -33,6 +34,12 @@ public class GlobalExceptionHandler {
         return ApiResponse.error(400, "参数校验失败: " + errors.toString());
     }
 
+    @ExceptionHandler(GenerationRejectedException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public ApiResponse<?> handleGenerationRejectedException(GenerationRejectedException e) {
+        return ApiResponse.error(429, e.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ApiResponse<?> handleException(Exception e) {
@@ -3,7 +3,14 @@ package com.enterprise.km.controller;
 import com.enterprise.km.dto.*;
 import com.enterprise.km.model.Conversation;
 import com.enterprise.km.model.Message;
+import com.enterprise.km.security.ReactorRequestContext;
+import com.enterprise.km.service.ActiveGenerationRegistry;
+import com.enterprise.km.service.ActiveGenerationRegistry.ActiveGeneration;
+import com.enterprise.km.service.ChatPreparationService;
+import com.enterprise.km.service.ChatPreparationService.PreparedChat;
 import com.enterprise.km.service.ConversationService;
+import com.enterprise.km.service.GenerationRejectedException;
+import com.enterprise.km.service.GenerationScheduler;
 import com.enterprise.km.service.RAGService;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
@@ -14,15 +21,18 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
-import reactor.core.scheduler.Schedulers;
-import reactor.util.context.Context;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/conversations")
@@ -31,6 +41,11 @@ public class ConversationController {
 
     private final ConversationService conversationService;
     private final RAGService ragService;
+    private final ChatPreparationService chatPreparationService;
+    private final GenerationScheduler generationScheduler;
+    private final NdjsonFrameWriter frames;
+    private final Scheduler chatBlockingScheduler;
+    private final ActiveGenerationRegistry activeGenerations;
 
     /**
      * Create a new conversation
@@ -81,41 +96,26 @@ public class ConversationController {
     @PostMapping("/chat")
     @PreAuthorize("hasAuthority('KNOWLEDGE_QUERY')")
     public ApiResponse<ChatResponse> chat(@Valid @RequestBody ChatRequest request) {
-        Conversation conversation;
-        List<Message> conversationHistory;
-
-        // Create new conversation or use existing one
-        if (request.getConversationId() == null) {
-            // Extract first few words from question as title
-            String title = request.getQuestion().length() > 30
-                    ? request.getQuestion().substring(0, 30) + "..."
-                    : request.getQuestion();
-            conversation = conversationService.createConversation(title);
-            conversationHistory = List.of();
-        } else {
-            conversation = conversationService.getConversation(request.getConversationId());
-            conversationHistory = conversationService.getConversationMessages(request.getConversationId());
-        }
-
-        // Save user message
-        Message userMessage = conversationService.addMessage(
-                conversation.getId(),
-                Message.MessageRole.USER,
-                request.getQuestion()
-        );
+        // History load, user-message save and retrieval run concurrently
+        PreparedChat prepared = chatPreparationService.prepare(request, RAGService.QUERY_SIMILARITY_THRESHOLD);
+        Conversation conversation = prepared.conversation();
 
         // Get AI response with conversation history
-        String answer = ragService.queryWithHistory(
+        RAGService.Retrieval retrieval = ChatPreparationService.await(prepared.retrieval());
+        String answer = ragService.generate(
                 request.getQuestion(),
-                request.getTopK(),
-                conversationHistory
+                retrieval,
+                ChatPreparationService.await(prepared.history())
         );
+        ChatPreparationService.await(prepared.userMessage());
+        List<SourceReference> sources = ChatPreparationService.await(prepared.sources());
 
         // Save assistant message
         Message assistantMessage = conversationService.addMessage(
                 conversation.getId(),
                 Message.MessageRole.ASSISTANT,
-                answer
+                answer,
+                sourcesMetadata(retrieval, sources)
         );
 
         ChatResponse response = ChatResponse.builder()
@@ -123,6 +123,7 @@ public class ConversationController {
                 .messageId(assistantMessage.getId())
                 .answer(answer)
                 .documentsFound(request.getTopK())
+                .sources(sources)
                 .build();
 
         return ApiResponse.success("查询成功", response);
@@ -130,88 +131,140 @@ public class ConversationController {
 
     /**
      * Stream chat with conversation history (SSE)
+     *
+     * Nothing blocks the servlet thread: JPA work runs on the bounded chat-db scheduler and
+     * tenant/security context travels in the Reactor Context. The generation itself is owned
+     * by ActiveGenerationRegistry, so it finishes and is persisted even if the client goes
+     * away; the client can pick it up again through the resume endpoint.
      */
     @PostMapping(value = "/chat/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
     @PreAuthorize("hasAuthority('KNOWLEDGE_QUERY')")
     public Flux<String> chatStream(@Valid @RequestBody ChatRequest request) {
-        // Capture SecurityContext and TenantContext before entering reactive pipeline
-        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        final String tenantId = com.enterprise.km.security.TenantContext.getTenantId();
-
-        // Execute setup in blocking context
-        Conversation conversation;
-        List<Message> conversationHistory;
-
-        // Create new conversation or use existing one
-        if (request.getConversationId() == null) {
-            String title = request.getQuestion().length() > 30
-                    ? request.getQuestion().substring(0, 30) + "..."
-                    : request.getQuestion();
-            conversation = conversationService.createConversation(title);
-            conversationHistory = List.of();
-        } else {
-            conversation = conversationService.getConversation(request.getConversationId());
-            conversationHistory = conversationService.getConversationMessages(request.getConversationId());
-        }
+        // Admission first: a saturated tenant gets an immediate 429 before anything is written
+        GenerationScheduler.Admission admission = generationScheduler.admit(
+                com.enterprise.km.security.TenantContext.getTenantId());
+        // Once the generation is started it owns the admission
+        AtomicBoolean handedOff = new AtomicBoolean();
 
-        // Save user message
-        Message userMessage = conversationService.addMessage(
-                conversation.getId(),
-                Message.MessageRole.USER,
-                request.getQuestion()
-        );
+        // History load, user-message save and retrieval run concurrently
+        return blocking(() -> chatPreparationService.prepare(request, RAGService.STREAM_SIMILARITY_THRESHOLD))
+                .flatMapMany(prepared -> chatStream(request, prepared, admission, handedOff))
+                .onErrorResume(this::errorFrame)
+                .doFinally(signal -> {
+                    if (!handedOff.get()) {
+                        admission.release();
+                    }
+                })
+                .contextWrite(ReactorRequestContext.capture());
+    }
+
+    private Flux<String> chatStream(ChatRequest request, PreparedChat prepared, GenerationScheduler.Admission admission,
+                                    AtomicBoolean handedOff) {
+        final Long conversationId = prepared.conversation().getId();
+
+        // Generation starts as soon as retrieval (and history) are ready
+        Flux<String> answerStream = Mono.fromFuture(prepared.retrieval()
+                        .thenCombine(prepared.history(), (retrieval, history) -> (Supplier<Flux<String>>)
+                                () -> ragService.streamGenerate(request.getQuestion(), retrieval, history, admission)))
+                .flatMap(this::blocking)
+                .flatMapMany(Function.identity())
+                .doFinally(signal -> admission.release());
+
+        // The assistant row exists before the first token so a reconnecting client can find it
+        return Mono.fromFuture(prepared.userMessage())
+                .zipWhen(userMessage -> blocking(() -> conversationService.startAssistantMessage(conversationId)))
+                .flatMapMany(messages -> Mono.deferContextual(context -> {
+                    Long assistantMessageId = messages.getT2().getId();
+                    ActiveGeneration generation = activeGenerations.start(assistantMessageId,
+                            frames.coalesce(answerStream).contextWrite(context),
+                            () -> sourcesMetadata(prepared));
+                    handedOff.set(true);
+                    return Mono.just(generation);
+                }).flatMapMany(generation -> Flux.concat(
+                        // Send start message
+                        Flux.just(frames.start(conversationId, messages.getT1().getId(), messages.getT2().getId())),
+
+                        // Tell the client it is waiting for a generation slot
+                        admission.position() > 0
+                                ? Flux.just(frames.queued(admission.position()))
+                                : Flux.empty(),
+
+                        // Retrieved chunks go out before the first token
+                        Mono.fromFuture(prepared.sources()).map(frames::sources),
+
+                        // Stream content, several tokens per frame; done once the answer is persisted
+                        generation.chunks().map(frames::content),
+                        Mono.fromSupplier(() -> frames.done(messages.getT2().getId()))
+                )));
+    }
 
-        final Long conversationId = conversation.getId();
-        final StringBuilder fullAnswer = new StringBuilder();
-
-        // Build the stream - NDJSON format (one JSON per line)
-        return Flux.concat(
-                // Send start message
-                Flux.just("{\"type\":\"start\",\"conversationId\":" + conversationId + ",\"messageId\":" + userMessage.getId() + "}\n"),
-
-                // Stream content and collect
-                ragService.streamQueryWithHistory(
-                        request.getQuestion(),
-                        request.getTopK(),
-                        conversationHistory
-                )
-                .doOnNext(chunk -> fullAnswer.append(chunk))
-                .map(chunk -> "{\"type\":\"content\",\"content\":\"" + escapeJson(chunk) + "\"}\n")
-                .concatWith(
-                    Flux.defer(() -> {
-                        // Restore SecurityContext and TenantContext
-                        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
-                        securityContext.setAuthentication(authentication);
-                        SecurityContextHolder.setContext(securityContext);
-                        com.enterprise.km.security.TenantContext.setTenantId(tenantId);
-
-                        try {
-                            // Save assistant message after streaming completes
-                            Message assistantMessage = conversationService.addMessage(
-                                    conversationId,
-                                    Message.MessageRole.ASSISTANT,
-                                    fullAnswer.toString()
-                            );
-                            return Flux.just("{\"type\":\"done\",\"messageId\":" + assistantMessage.getId() + "}\n");
-                        } finally {
-                            // Clear context
-                            SecurityContextHolder.clearContext();
-                            com.enterprise.km.security.TenantContext.clear();
-                        }
-                    })
-                )
-        ).onErrorResume(error ->
-            Flux.just("{\"type\":\"error\",\"message\":\"" + escapeJson(error.getMessage()) + "\"}\n")
+    /**
+     * Resume an assistant answer: replays what has been generated and, if the generation is
+     * still running on this node, follows it to the end.
+     */
+    @GetMapping(value = "/{conversationId}/messages/{messageId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasAuthority('KNOWLEDGE_QUERY')")
+    public Flux<String> resumeStream(@PathVariable Long conversationId, @PathVariable Long messageId) {
+        return blocking(() -> {
+            Message message = conversationService.getMessage(conversationId, messageId);
+            Optional<ActiveGeneration> generation = activeGenerations.get(messageId);
+            if (generation.isEmpty() && message.isStreaming()) {
+                // It may have finished between the two lookups
+                message = conversationService.getMessage(conversationId, messageId);
+            }
+            return new ResumeState(message, generation);
+        }).flatMapMany(state -> {
+            Flux<String> start = Flux.just(frames.start(conversationId, null, messageId));
+            if (state.generation().isPresent()) {
+                return Flux.concat(start,
+                        state.generation().get().chunks().map(frames::content),
+                        Mono.fromSupplier(() -> frames.done(messageId)));
+            }
+
+            Message message = state.message();
+            Flux<String> content = message.getContent() == null || message.getContent().isEmpty()
+                    ? Flux.empty()
+                    : Flux.just(frames.content(message.getContent()));
+            if (message.isStreaming()) {
+                return Flux.concat(start, content, Flux.just(frames.error(null, "回答生成已中断或正在其他节点进行，请稍后刷新")));
+            }
+            if (message.getStatus() == Message.MessageStatus.INTERRUPTED) {
+                return Flux.concat(start, content, Flux.just(frames.error(null, "回答生成已中断")));
+            }
+            return Flux.concat(start, content, Flux.just(frames.done(messageId)));
+        }).onErrorResume(this::errorFrame)
+                .contextWrite(ReactorRequestContext.capture());
+    }
+
+    private record ResumeState(Message message, Optional<ActiveGeneration> generation) {
+    }
+
+    private Flux<String> errorFrame(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Integer code = cause instanceof GenerationRejectedException ? 429 : null;
+        return Flux.just(frames.error(code, cause.getMessage()));
+    }
+
+    private static Map<String, Object> sourcesMetadata(PreparedChat prepared) {
+        // Retrieval may have failed, in which case the answer is stored without sources
+        if (prepared.sources().isCompletedExceptionally() || !prepared.sources().isDone()) {
+            return null;
+        }
+        return sourcesMetadata(prepared.retrieval().join(), prepared.sources().join());
+    }
+
+    /**
+     * Message.metadata of an answer: its sources and when retrieval finished (TTFT is measured separately)
+     */
+    private static Map<String, Object> sourcesMetadata(RAGService.Retrieval retrieval, List<SourceReference> sources) {
+        return Map.of(
+                "sources", sources,
+                "retrievedAt", retrieval.retrievedAt().toString()
         );
     }
 
-    private String escapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    private <T> Mono<T> blocking(Supplier<T> action) {
+        return ReactorRequestContext.blocking(chatBlockingScheduler, action);
     }
 
     /**
@@ -1,8 +1,15 @@
 package com.enterprise.km.controller;
 
 import com.enterprise.km.dto.ApiResponse;
+import com.enterprise.km.dto.BulkImportDTO;
 import com.enterprise.km.dto.DocumentDTO;
+import com.enterprise.km.dto.DocumentSearchResult;
+import com.enterprise.km.dto.DocumentVersionDTO;
+import com.enterprise.km.dto.IngestionProgressDTO;
+import com.enterprise.km.model.BulkImport;
 import com.enterprise.km.model.Document;
+import com.enterprise.km.service.BulkImportService;
+import com.enterprise.km.service.DocumentSearchService;
 import com.enterprise.km.service.DocumentService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -11,12 +18,16 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/documents")
 @RequiredArgsConstructor
 public class DocumentController {
 
     private final DocumentService documentService;
+    private final DocumentSearchService documentSearchService;
+    private final BulkImportService bulkImportService;
 
     @PostMapping("/upload")
     @PreAuthorize("hasAuthority('DOCUMENT_WRITE')")
@@ -25,7 +36,52 @@ public class DocumentController {
             @RequestParam(value = "departmentId", required = false) Long departmentId) {
 
         Document document = documentService.uploadDocument(file, departmentId);
-        return ApiResponse.success("文档上传成功", DocumentDTO.from(document));
+        return ApiResponse.success("文档上传成功，正在后台处理", DocumentDTO.from(document));
+    }
+
+    @PostMapping("/import")
+    @PreAuthorize("hasAuthority('DOCUMENT_WRITE')")
+    public ApiResponse<BulkImportDTO> importArchive(@RequestParam("file") MultipartFile file) {
+        BulkImport bulkImport = bulkImportService.importZip(file);
+        return ApiResponse.success("压缩包已接收，正在后台导入", bulkImportService.getStatus(bulkImport.getId()));
+    }
+
+    @PostMapping("/import/directory")
+    @PreAuthorize("hasAuthority('DOCUMENT_WRITE') and hasAuthority('USER_MANAGE')")
+    public ApiResponse<BulkImportDTO> importDirectory(@RequestParam("path") String path) {
+        BulkImport bulkImport = bulkImportService.importDirectory(path);
+        return ApiResponse.success("目录已接收，正在后台导入", bulkImportService.getStatus(bulkImport.getId()));
+    }
+
+    @GetMapping("/imports/{importId}")
+    @PreAuthorize("hasAuthority('DOCUMENT_READ')")
+    public ApiResponse<BulkImportDTO> getImportStatus(@PathVariable Long importId) {
+        return ApiResponse.success(bulkImportService.getStatus(importId));
+    }
+
+    @PutMapping("/{id}")
+    @PreAuthorize("hasAuthority('DOCUMENT_WRITE')")
+    public ApiResponse<DocumentVersionDTO> uploadNewVersion(
+            @PathVariable Long id,
+            @RequestParam("file") MultipartFile file) {
+
+        return documentService.uploadNewVersion(id, file)
+                .map(version -> ApiResponse.success("新版本上传成功，正在后台处理", DocumentVersionDTO.from(version)))
+                .orElseGet(() -> ApiResponse.success("文档内容未变化", null));
+    }
+
+    @GetMapping("/{id}/versions")
+    @PreAuthorize("hasAuthority('DOCUMENT_READ')")
+    public ApiResponse<List<DocumentVersionDTO>> listVersions(@PathVariable Long id) {
+        return ApiResponse.success(documentService.listVersions(id).stream()
+                .map(DocumentVersionDTO::from)
+                .toList());
+    }
+
+    @GetMapping("/{id}/progress")
+    @PreAuthorize("hasAuthority('DOCUMENT_READ')")
+    public ApiResponse<IngestionProgressDTO> getIngestionProgress(@PathVariable Long id) {
+        return ApiResponse.success(documentService.getIngestionProgress(id));
     }
 
     @GetMapping
@@ -38,13 +94,12 @@ public class DocumentController {
 
     @GetMapping("/search")
     @PreAuthorize("hasAuthority('DOCUMENT_READ')")
-    public ApiResponse<Page<DocumentDTO>> searchDocuments(
+    public ApiResponse<DocumentSearchResult> searchDocuments(
             @RequestParam("q") String keyword,
-            Pageable pageable) {
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
 
-        Page<Document> documents = documentService.searchDocuments(keyword, pageable);
-        Page<DocumentDTO> documentDTOs = documents.map(DocumentDTO::from);
-        return ApiResponse.success(documentDTOs);
+        return ApiResponse.success(documentSearchService.search(keyword, cursor, size));
     }
 
     @DeleteMapping("/{id}")
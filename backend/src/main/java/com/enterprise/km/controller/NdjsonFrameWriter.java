@@ -0,0 +1,230 @@
+package com.enterprise.km.controller;
+
+import com.enterprise.km.dto.SourceReference;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the NDJSON frames of /chat/stream (start, queued, sources, content, done, error).
+ *
+ * Each thread keeps one Jackson streaming generator over a reusable builder and writes every
+ * frame through it as a root-level value, so only the final frame string is allocated
+ * (a generator per frame cost more than the string concatenation it replaced; see
+ * NdjsonFrameBenchmark). {@link #coalesce} merges model tokens so one content frame carries
+ * up to maxChars characters or maxDelay worth of tokens instead of a single token.
+ */
+@Component
+public class NdjsonFrameWriter {
+
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private final JsonFactory jsonFactory;
+    private final ThreadLocal<FrameBuffer> buffers = ThreadLocal.withInitial(this::newBuffer);
+
+    @Value("${app.chat.stream.coalesce-max-chars:64}")
+    private int maxChars;
+
+    @Value("${app.chat.stream.coalesce-max-delay:PT0.03S}")
+    private Duration maxDelay;
+
+    public NdjsonFrameWriter(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * messageId is the user's question (absent when resuming), assistantMessageId the answer
+     * that can be resumed.
+     */
+    public String start(Long conversationId, Long messageId, Long assistantMessageId) {
+        return frame("start", g -> {
+            g.writeNumberField("conversationId", conversationId);
+            if (messageId != null) {
+                g.writeNumberField("messageId", messageId);
+            }
+            g.writeNumberField("assistantMessageId", assistantMessageId);
+        });
+    }
+
+    public String queued(int position) {
+        return frame("queued", g -> g.writeNumberField("position", position));
+    }
+
+    public String sources(List<SourceReference> sources) {
+        return frame("sources", g -> {
+            g.writeFieldName("sources");
+            g.writeObject(sources);
+        });
+    }
+
+    public String content(String content) {
+        return frame("content", g -> g.writeStringField("content", content));
+    }
+
+    public String done(Long messageId) {
+        return frame("done", g -> g.writeNumberField("messageId", messageId));
+    }
+
+    public String error(Integer code, String message) {
+        return frame("error", g -> {
+            if (code != null) {
+                g.writeNumberField("code", code);
+            }
+            g.writeStringField("message", message != null ? message : "");
+        });
+    }
+
+    /**
+     * Merge tokens into chunks emitted once maxChars have accumulated or maxDelay has passed
+     * since the first pending token. Pending text is flushed before completion or error.
+     */
+    public Flux<String> coalesce(Flux<String> tokens) {
+        long delayMillis = maxDelay.toMillis();
+        return Flux.create(sink -> {
+            StringBuilder pending = new StringBuilder();
+            Disposable[] timer = new Disposable[1];
+            Runnable flush = () -> {
+                synchronized (pending) {
+                    if (timer[0] != null) {
+                        timer[0].dispose();
+                        timer[0] = null;
+                    }
+                    if (!pending.isEmpty()) {
+                        // Emitted under the lock so timer and token flushes cannot reorder
+                        sink.next(pending.toString());
+                        pending.setLength(0);
+                    }
+                }
+            };
+
+            Disposable upstream = tokens.subscribe(token -> {
+                boolean full;
+                synchronized (pending) {
+                    pending.append(token);
+                    full = pending.length() >= maxChars;
+                    if (!full && timer[0] == null) {
+                        timer[0] = Schedulers.parallel().schedule(flush, delayMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
+                if (full) {
+                    flush.run();
+                }
+            }, error -> {
+                flush.run();
+                sink.error(error);
+            }, () -> {
+                flush.run();
+                sink.complete();
+            });
+
+            sink.onDispose(() -> {
+                upstream.dispose();
+                synchronized (pending) {
+                    if (timer[0] != null) {
+                        timer[0].dispose();
+                    }
+                }
+            });
+        });
+    }
+
+    private String frame(String type, FieldWriter fields) {
+        FrameBuffer buffer = buffers.get();
+        buffer.reset();
+        JsonGenerator generator = buffer.generator;
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("type", type);
+            fields.write(generator);
+            generator.writeEndObject();
+            generator.flush();
+        } catch (IOException | RuntimeException e) {
+            // The generator may be stuck mid-object; start the thread over with a fresh one
+            buffers.remove();
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+        buffer.append('\n');
+        return buffer.toString();
+    }
+
+    private FrameBuffer newBuffer() {
+        FrameBuffer buffer = new FrameBuffer();
+        try {
+            buffer.generator = jsonFactory.createGenerator(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Frames are separated by the newline appended above, not Jackson's root separator
+        buffer.generator.setRootValueSeparator(null);
+        return buffer;
+    }
+
+    @FunctionalInterface
+    private interface FieldWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Unsynchronized, reusable Writer over a StringBuilder plus the thread's generator writing
+     * into it; oversized builders are dropped so one long frame does not pin memory on the thread.
+     */
+    private static final class FrameBuffer extends Writer {
+
+        private StringBuilder builder = new StringBuilder(256);
+        private JsonGenerator generator;
+
+        void reset() {
+            if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+                builder = new StringBuilder(256);
+            } else {
+                builder.setLength(0);
+            }
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            builder.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            builder.append(str, offset, offset + length);
+        }
+
+        @Override
+        public void write(int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public Writer append(char c) {
+            builder.append(c);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.enterprise.km.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkImportDTO {
+
+    private Long id;
+    private String source;
+    private String status; // EXTRACTING, INGESTING, COMPLETED, FAILED
+    private Integer filesQueued;
+    private Integer filesSkipped;
+    private Long documentsSucceeded;
+    private Long documentsFailed;
+    private Long documentsPending;
+    private Long chunksIndexed;
+    private Double documentsPerSecond;
+    private Double chunksPerSecond;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private List<FileError> errors; // Entries that could not be queued, then files whose ingestion failed
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FileError {
+        private String file;
+        private String error;
+    }
+}
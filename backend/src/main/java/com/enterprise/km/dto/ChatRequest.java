@@ -20,4 +20,8 @@ public class ChatRequest {
     private Integer topK = 5;
 
     private Double threshold = 0.5;
+
+    private Long departmentId; // optional, restricts retrieval to one department
+
+    private Boolean hybrid = false; // combine vector and keyword search (RRF)
 }
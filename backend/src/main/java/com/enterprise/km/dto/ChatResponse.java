@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,4 +17,5 @@ public class ChatResponse {
     private Long messageId;
     private String answer;
     private Integer documentsFound;
+    private List<SourceReference> sources;
 }
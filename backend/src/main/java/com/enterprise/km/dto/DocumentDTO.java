@@ -21,8 +21,11 @@ public class DocumentDTO {
     private Long fileSize;
     private String status;
     private String tags;
+    private Long departmentId;
+    private Integer version;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private String snippet; // highlighted match, only set by search
 
     public static DocumentDTO from(Document document) {
         return DocumentDTO.builder()
@@ -33,6 +36,8 @@ public class DocumentDTO {
                 .fileSize(document.getFileSize())
                 .status(document.getStatus().toString())
                 .tags(document.getTags())
+                .departmentId(document.getDepartment() != null ? document.getDepartment().getId() : null)
+                .version(document.getVersion() != null ? document.getVersion() : 1)
                 .createdAt(document.getCreatedAt())
                 .updatedAt(document.getUpdatedAt())
                 .build();
@@ -0,0 +1,18 @@
+package com.enterprise.km.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSearchResult {
+
+    private List<DocumentDTO> content;
+    private String nextCursor; // null when there are no more results
+}
@@ -0,0 +1,42 @@
+package com.enterprise.km.dto;
+
+import com.enterprise.km.model.DocumentVersion;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentVersionDTO {
+
+    private Long id;
+    private Long documentId;
+    private Integer versionNumber;
+    private String fileName;
+    private Long fileSize;
+    private String status;
+    private Integer chunksKept;
+    private Integer chunksAdded;
+    private Integer chunksRemoved;
+    private LocalDateTime createdAt;
+
+    public static DocumentVersionDTO from(DocumentVersion version) {
+        return DocumentVersionDTO.builder()
+                .id(version.getId())
+                .documentId(version.getDocument().getId())
+                .versionNumber(version.getVersionNumber())
+                .fileName(version.getFileName())
+                .fileSize(version.getFileSize())
+                .status(version.getStatus().name())
+                .chunksKept(version.getChunksKept())
+                .chunksAdded(version.getChunksAdded())
+                .chunksRemoved(version.getChunksRemoved())
+                .createdAt(version.getCreatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.enterprise.km.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionProgressDTO {
+
+    private Long documentId;
+    private String documentStatus;
+    private String jobStatus;
+    private Integer progress; // 0-100
+    private Integer attempts;
+    private String lastError;
+    private Integer chunkCount;
+    private Integer embeddingsReused; // Embedding calls saved by content-hash reuse
+    private Double dedupRatio; // embeddingsReused / chunkCount
+    private LocalDateTime updatedAt;
+}
@@ -19,6 +19,7 @@ public class MessageDTO {
     private String content;
     private LocalDateTime createdAt;
     private Integer tokenCount;
+    private String status;
 
     public static MessageDTO from(Message message) {
         return MessageDTO.builder()
@@ -27,6 +28,7 @@ public class MessageDTO {
                 .content(message.getContent())
                 .createdAt(message.getCreatedAt())
                 .tokenCount(message.getTokenCount())
+                .status(message.getStatus() != null ? message.getStatus().name() : null)
                 .build();
     }
 }
@@ -0,0 +1,18 @@
+package com.enterprise.km.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SourceReference {
+
+    private Long documentId;
+    private String title;
+    private Integer chunkIndex;
+    private Double score; // 1 - vector distance; null for keyword-only hits
+}
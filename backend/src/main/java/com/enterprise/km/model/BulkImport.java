@@ -0,0 +1,54 @@
+package com.enterprise.km.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One bulk import (zip archive or server directory). Entries are stored and queued as
+ * regular ingestion jobs pointing back here; progress is aggregated from those jobs.
+ */
+@Entity
+@Table(name = "bulk_imports")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkImport extends BaseEntity {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "tenant_id", nullable = false)
+    private Tenant tenant;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "uploaded_by")
+    private User uploadedBy;
+
+    @Column(nullable = false)
+    private String source; // Archive name or directory path
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private ImportStatus status = ImportStatus.EXTRACTING;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer filesQueued = 0;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer filesSkipped = 0;
+
+    @Column(columnDefinition = "TEXT")
+    private String errors; // JSON array of {file, error} for entries that could not be queued
+
+    @Column
+    private LocalDateTime extractedAt;
+
+    public enum ImportStatus {
+        EXTRACTING, QUEUED, FAILED
+    }
+}
@@ -37,4 +37,10 @@ public class Conversation extends BaseEntity {
     @Column(columnDefinition = "jsonb")
     @org.hibernate.annotations.JdbcTypeCode(org.hibernate.type.SqlTypes.JSON)
     private String metadata; // Store conversation context, settings, etc.
+
+    @Column(columnDefinition = "TEXT")
+    private String summary; // Running summary of the turns folded out of the prompt window
+
+    @Column(name = "summarized_until_message_id")
+    private Long summarizedUntilMessageId; // Last message included in summary
 }
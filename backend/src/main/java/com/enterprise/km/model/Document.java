@@ -30,6 +30,12 @@ public class Document extends BaseEntity {
     @Column
     private String filePath;
 
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of the uploaded file, hex
+
+    @Column
+    private Integer version; // Current version number; null means the original upload (1)
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "tenant_id", nullable = false)
     private Tenant tenant;
@@ -50,6 +56,9 @@ public class Document extends BaseEntity {
     @Column
     private String tags; // JSON array of tags
 
+    @Column(columnDefinition = "TEXT")
+    private String searchTokens; // Title + content tokens backing the search_vector index
+
     public enum DocumentStatus {
         PENDING, PROCESSING, COMPLETED, FAILED
     }
@@ -28,6 +28,12 @@ public class DocumentChunk extends BaseEntity {
     @Column
     private String vectorId; // Reference to vector store
 
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of content, key for embedding reuse
+
+    @Column(columnDefinition = "TEXT")
+    private String searchTokens; // CJK bigram / word tokens backing the search_vector index
+
     @Column(columnDefinition = "vector(768)")
     private float[] embedding;
 
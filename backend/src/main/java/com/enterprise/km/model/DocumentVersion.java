@@ -0,0 +1,58 @@
+package com.enterprise.km.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * A re-uploaded revision of a document. PENDING until its ingestion job swaps it in; the
+ * chunk counters record how much of the previous version's index was kept.
+ */
+@Entity
+@Table(name = "document_versions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DocumentVersion extends BaseEntity {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "document_id", nullable = false)
+    private Document document;
+
+    @Column(nullable = false)
+    private Integer versionNumber;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private String fileType;
+
+    @Column(nullable = false)
+    private Long fileSize;
+
+    @Column
+    private String filePath; // Cleared once the file is removed after being superseded
+
+    @Column(length = 64)
+    private String contentHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private VersionStatus status = VersionStatus.PENDING;
+
+    @Column
+    private Integer chunksKept;
+
+    @Column
+    private Integer chunksAdded;
+
+    @Column
+    private Integer chunksRemoved;
+
+    public enum VersionStatus {
+        PENDING, CURRENT, SUPERSEDED, FAILED
+    }
+}
@@ -0,0 +1,72 @@
+package com.enterprise.km.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Queued ingestion of one uploaded document (parse, chunk, embed, index).
+ * Claimed by workers on any node with SELECT ... FOR UPDATE SKIP LOCKED; a RUNNING job whose
+ * lockedUntil has passed is considered abandoned and may be claimed again.
+ */
+@Entity
+@Table(name = "ingestion_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestionJob extends BaseEntity {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "document_id", nullable = false)
+    private Document document;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "tenant_id", nullable = false)
+    private Tenant tenant;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "version_id")
+    private DocumentVersion version; // Set when the job applies a re-uploaded version
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "bulk_import_id")
+    private BulkImport bulkImport; // Set for files queued by a bulk import
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private JobStatus status = JobStatus.QUEUED;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(nullable = false)
+    private LocalDateTime availableAt; // Not claimable before this time (retry backoff)
+
+    @Column
+    private String lockedBy; // Worker node holding the job
+
+    @Column
+    private LocalDateTime lockedUntil; // Visibility timeout, extended while the worker makes progress
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer progress = 0; // 0-100
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column
+    private Integer chunkCount; // Set on success
+
+    @Column
+    private Integer embeddingsReused; // Chunks whose vector came from an earlier upload
+
+    public enum JobStatus {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+}
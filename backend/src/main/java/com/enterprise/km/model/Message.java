@@ -3,6 +3,8 @@ package com.enterprise.km.model;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDateTime;
+
 @Entity
 @Table(name = "messages")
 @Getter
@@ -30,9 +32,30 @@ public class Message extends BaseEntity {
     @org.hibernate.annotations.JdbcTypeCode(org.hibernate.type.SqlTypes.JSON)
     private String metadata; // Store references to documents, chunks, etc.
 
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private MessageStatus status; // null for messages written in one go
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil; // STREAMING only: renewed by the generating node, swept once it lapses
+
+    public boolean isStreaming() {
+        return status == MessageStatus.STREAMING;
+    }
+
+    public boolean isComplete() {
+        return status == null || status == MessageStatus.COMPLETED;
+    }
+
     public enum MessageRole {
         USER,    // User question
         ASSISTANT, // AI response
         SYSTEM   // System message
     }
+
+    public enum MessageStatus {
+        STREAMING,   // Answer still being generated; content holds the last flushed prefix
+        COMPLETED,   // Generation finished
+        INTERRUPTED  // Generation failed; content holds what was produced
+    }
 }
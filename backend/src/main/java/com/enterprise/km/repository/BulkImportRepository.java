@@ -0,0 +1,9 @@
+package com.enterprise.km.repository;
+
+import com.enterprise.km.model.BulkImport;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BulkImportRepository extends JpaRepository<BulkImport, Long> {
+}
@@ -0,0 +1,12 @@
+package com.enterprise.km.repository;
+
+import com.enterprise.km.model.Department;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface DepartmentRepository extends JpaRepository<Department, Long> {
+    Optional<Department> findByIdAndTenantTenantId(Long id, String tenantId);
+}
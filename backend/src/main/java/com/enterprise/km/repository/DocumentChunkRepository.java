@@ -16,6 +16,8 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Lo
 
     List<DocumentChunk> findByDocumentId(Long documentId);
 
+    List<DocumentChunk> findTop500BySearchTokensIsNull();
+
     @Query("SELECT COUNT(*) FROM DocumentChunk dc WHERE dc.document.id = :documentId")
     int countByDocumentId(@Param("documentId") Long documentId);
 
@@ -23,13 +25,27 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Lo
     @Query("DELETE FROM DocumentChunk dc WHERE dc.document.id = :documentId")
     void deleteByDocumentId(@Param("documentId") Long documentId);
 
-    @Query(value = "SELECT * FROM document_chunks dc " +
-           "WHERE dc.document_id IN " +
-           "(SELECT d.id FROM documents d WHERE d.tenant_id = :tenantId) " +
-           "ORDER BY dc.embedding <-> CAST(:queryEmbedding AS vector) " +
+    @Query(value = "SELECT dc.* FROM document_chunks dc " +
+           "JOIN documents d ON d.id = dc.document_id " +
+           "WHERE d.tenant_id = :tenantId AND d.deleted = false " +
+           "ORDER BY dc.embedding <=> CAST(:queryEmbedding AS vector) " +
            "LIMIT :limit", nativeQuery = true)
     List<DocumentChunk> findSimilarChunks(
         @Param("tenantId") Long tenantId,
         @Param("queryEmbedding") String queryEmbedding,
         @Param("limit") int limit);
+
+    @Query(value = "SELECT dc.* FROM document_chunks dc " +
+           "JOIN documents d ON d.id = dc.document_id " +
+           "JOIN tenants t ON t.id = d.tenant_id " +
+           "WHERE t.tenant_id = :tenantId AND d.deleted = false " +
+           "AND (CAST(:departmentId AS bigint) IS NULL OR d.department_id = :departmentId) " +
+           "AND dc.search_vector @@ CAST(:query AS tsquery) " +
+           "ORDER BY ts_rank(dc.search_vector, CAST(:query AS tsquery)) DESC " +
+           "LIMIT :limit", nativeQuery = true)
+    List<DocumentChunk> findLexicalMatches(
+        @Param("tenantId") String tenantId,
+        @Param("departmentId") Long departmentId,
+        @Param("query") String query,
+        @Param("limit") int limit);
 }
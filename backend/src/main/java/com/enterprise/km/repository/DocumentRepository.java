@@ -1,14 +1,18 @@
 package com.enterprise.km.repository;
 
 import com.enterprise.km.model.Document;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
@@ -18,10 +22,46 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     Page<Document> findByTenantTenantIdAndDepartmentIdAndDeletedFalse(
         String tenantId, Long departmentId, Pageable pageable);
 
-    @Query("SELECT d FROM Document d WHERE d.tenant.tenantId = :tenantId " +
-           "AND d.deleted = false AND (d.title LIKE %:keyword% OR d.content LIKE %:keyword%)")
-    Page<Document> searchDocuments(
+    /**
+     * One page of ranked search hits after the (rank, id) keyset cursor; pass nulls for the first page.
+     * Only the newest maxCandidates matches (by id) are ranked; the GIN index narrows them first.
+     */
+    @Query(value = "SELECT r.id AS id, r.rank AS rank FROM (" +
+           "SELECT c.id, ts_rank(c.search_vector, CAST(:query AS tsquery)) AS rank FROM (" +
+           "SELECT d.id, d.search_vector FROM documents d JOIN tenants t ON t.id = d.tenant_id " +
+           "WHERE t.tenant_id = :tenantId AND d.deleted = false " +
+           "AND d.search_vector @@ CAST(:query AS tsquery) " +
+           "ORDER BY d.id DESC LIMIT :maxCandidates) c) r " +
+           "WHERE CAST(:cursorRank AS real) IS NULL " +
+           "OR (r.rank, r.id) < (CAST(:cursorRank AS real), CAST(:cursorId AS bigint)) " +
+           "ORDER BY r.rank DESC, r.id DESC LIMIT :limit", nativeQuery = true)
+    List<SearchHit> searchRanked(
         @Param("tenantId") String tenantId,
-        @Param("keyword") String keyword,
-        Pageable pageable);
+        @Param("query") String query,
+        @Param("maxCandidates") int maxCandidates,
+        @Param("cursorRank") Float cursorRank,
+        @Param("cursorId") Long cursorId,
+        @Param("limit") int limit);
+
+    List<Document> findTop500BySearchTokensIsNullAndDeletedFalse();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Document d WHERE d.id = :id")
+    Optional<Document> findByIdForUpdate(@Param("id") Long id);
+
+    @Query("SELECT d.id AS id, d.title AS title FROM Document d " +
+           "WHERE d.id IN :ids AND d.tenant.tenantId = :tenantId")
+    List<DocumentTitle> findTitles(@Param("ids") Collection<Long> ids, @Param("tenantId") String tenantId);
+
+    interface SearchHit {
+        Long getId();
+
+        Float getRank();
+    }
+
+    interface DocumentTitle {
+        Long getId();
+
+        String getTitle();
+    }
 }
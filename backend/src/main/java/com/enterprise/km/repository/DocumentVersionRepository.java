@@ -0,0 +1,25 @@
+package com.enterprise.km.repository;
+
+import com.enterprise.km.model.DocumentVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DocumentVersionRepository extends JpaRepository<DocumentVersion, Long> {
+
+    List<DocumentVersion> findByDocumentIdOrderByVersionNumberDesc(Long documentId);
+
+    List<DocumentVersion> findByDocumentIdAndStatus(Long documentId, DocumentVersion.VersionStatus status);
+
+    @Query("SELECT MAX(v.versionNumber) FROM DocumentVersion v WHERE v.document.id = :documentId")
+    Integer findMaxVersionNumber(@Param("documentId") Long documentId);
+
+    @Modifying
+    @Query("DELETE FROM DocumentVersion v WHERE v.document.id = :documentId")
+    void deleteByDocumentId(@Param("documentId") Long documentId);
+}
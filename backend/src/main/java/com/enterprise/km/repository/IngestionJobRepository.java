@@ -0,0 +1,64 @@
+package com.enterprise.km.repository;
+
+import com.enterprise.km.model.IngestionJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+
+    Optional<IngestionJob> findFirstByDocumentIdOrderByIdDesc(Long documentId);
+
+    @Query("SELECT j.id AS id, j.document.id AS documentId, v.id AS versionId, j.tenant.tenantId AS tenantId, " +
+           "j.attempts AS attempts FROM IngestionJob j LEFT JOIN j.version v WHERE j.id = :id")
+    Optional<JobTarget> findTarget(@Param("id") Long id);
+
+    @Query("SELECT j.status AS status, COUNT(j) AS jobs, SUM(j.chunkCount) AS chunks, MAX(j.updatedAt) AS lastUpdated " +
+           "FROM IngestionJob j WHERE j.bulkImport.id = :importId GROUP BY j.status")
+    List<StatusCount> countByBulkImport(@Param("importId") Long importId);
+
+    @Query("SELECT d.fileName AS fileName, j.lastError AS error FROM IngestionJob j JOIN j.document d " +
+           "WHERE j.bulkImport.id = :importId AND j.status = :status ORDER BY j.id")
+    List<FailedFile> findByBulkImportAndStatus(@Param("importId") Long importId,
+                                               @Param("status") IngestionJob.JobStatus status, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM IngestionJob j WHERE j.document.id = :documentId")
+    void deleteByDocumentId(@Param("documentId") Long documentId);
+
+    interface JobTarget {
+        Long getId();
+
+        Long getDocumentId();
+
+        Long getVersionId(); // null for the initial ingestion
+
+        String getTenantId();
+
+        Integer getAttempts();
+    }
+
+    interface StatusCount {
+        IngestionJob.JobStatus getStatus();
+
+        Long getJobs();
+
+        Long getChunks();
+
+        LocalDateTime getLastUpdated();
+    }
+
+    interface FailedFile {
+        String getFileName();
+
+        String getError();
+    }
+}
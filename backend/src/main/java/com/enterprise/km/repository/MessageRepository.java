@@ -2,10 +2,13 @@ package com.enterprise.km.repository;
 
 import com.enterprise.km.model.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -21,4 +24,48 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
         @Param("conversationId") Long conversationId,
         org.springframework.data.domain.Pageable pageable
     );
+
+    @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId " +
+           "AND m.id > :afterId AND m.deleted = false ORDER BY m.createdAt ASC")
+    List<Message> findByConversationIdAfter(
+        @Param("conversationId") Long conversationId,
+        @Param("afterId") Long afterId
+    );
+
+    /**
+     * Flush a streaming answer's progress; no-op once the message has left STREAMING, so a
+     * late periodic flush cannot overwrite the final content.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Message m SET m.content = :content, m.tokenCount = :tokenCount " +
+           "WHERE m.id = :id AND m.status = com.enterprise.km.model.Message.MessageStatus.STREAMING")
+    int updateStreamingContent(
+        @Param("id") Long id,
+        @Param("content") String content,
+        @Param("tokenCount") Integer tokenCount
+    );
+
+    /**
+     * Extend the lease of answers this node is still generating, on the database clock.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE messages SET lease_until = now() + make_interval(secs => :seconds) " +
+                   "WHERE id IN (:ids) AND status = 'STREAMING'", nativeQuery = true)
+    int renewStreamingLeases(
+        @Param("ids") Collection<Long> ids,
+        @Param("seconds") double seconds
+    );
+
+    /**
+     * Mark answers whose generating node stopped renewing them (crash, restart) as INTERRUPTED,
+     * keeping the content flushed so far. Rows without a lease predate leases and are stale.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE messages SET status = 'INTERRUPTED', lease_until = NULL, updated_at = now() " +
+                   "WHERE status = 'STREAMING' AND (lease_until IS NULL OR lease_until < now())",
+           nativeQuery = true)
+    int interruptExpiredStreaming();
 }
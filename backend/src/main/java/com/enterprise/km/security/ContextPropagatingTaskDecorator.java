@@ -0,0 +1,28 @@
+package com.enterprise.km.security;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Carries the submitting thread's TenantContext and SecurityContext onto pool threads,
+ * and clears both once the task finishes so nothing leaks into the next task.
+ */
+public class ContextPropagatingTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        String tenantId = TenantContext.getTenantId();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        return () -> {
+            TenantContext.setTenantId(tenantId);
+            SecurityContextHolder.setContext(securityContext);
+            try {
+                runnable.run();
+            } finally {
+                SecurityContextHolder.clearContext();
+                TenantContext.clear();
+            }
+        };
+    }
+}
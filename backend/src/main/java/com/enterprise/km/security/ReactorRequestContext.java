@@ -0,0 +1,55 @@
+package com.enterprise.km.security;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.context.Context;
+
+import java.util.function.Supplier;
+
+/**
+ * Carries TenantContext and the SecurityContext through a reactive pipeline in the Reactor
+ * Context, and restores them as ThreadLocals only around blocking work run on a scheduler.
+ */
+public final class ReactorRequestContext {
+
+    private static final Class<Snapshot> KEY = Snapshot.class;
+
+    private ReactorRequestContext() {
+    }
+
+    /**
+     * Snapshot of the calling thread's contexts, for {@code contextWrite}.
+     */
+    public static Context capture() {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        return Context.of(KEY, new Snapshot(TenantContext.getTenantId(), securityContext));
+    }
+
+    /**
+     * Run a blocking action on the scheduler with the subscriber's contexts installed.
+     */
+    public static <T> Mono<T> blocking(Scheduler scheduler, Supplier<T> action) {
+        return Mono.deferContextual(context -> {
+            Snapshot snapshot = context.getOrDefault(KEY, null);
+            if (snapshot == null) {
+                return Mono.error(new IllegalStateException("Request context is not set"));
+            }
+            return Mono.fromSupplier(() -> {
+                TenantContext.setTenantId(snapshot.tenantId());
+                SecurityContextHolder.setContext(snapshot.securityContext());
+                try {
+                    return action.get();
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    TenantContext.clear();
+                }
+            });
+        }).subscribeOn(scheduler);
+    }
+
+    private record Snapshot(String tenantId, SecurityContext securityContext) {
+    }
+}
@@ -0,0 +1,194 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.Message;
+import com.enterprise.km.repository.MessageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * In-flight streaming answers on this node.
+ *
+ * A generation is subscribed here, not by the HTTP response, so it runs to completion even
+ * if the client disconnects. Generated text is replayed to every subscriber (the original
+ * request and any resume), flushed to the assistant Message row every flushInterval, and
+ * written with its final status when the model finishes.
+ *
+ * While it runs, the message's lease is renewed every leaseTimeout / 3. Every node also sweeps
+ * STREAMING rows whose lease has lapsed, at startup and on the same schedule, and marks them
+ * INTERRUPTED with the content last flushed, so answers orphaned by a crash or restart do not
+ * stay STREAMING forever.
+ */
+@Component
+@Slf4j
+public class ActiveGenerationRegistry {
+
+    private final MessageRepository messageRepository;
+    private final ConversationService conversationService;
+    private final Scheduler blockingScheduler;
+
+    private final Map<Long, ActiveGeneration> active = new ConcurrentHashMap<>();
+
+    @Value("${app.chat.stream.flush-interval:PT2S}")
+    private Duration flushInterval;
+
+    @Value("${app.chat.stream.lease-timeout:PT1M}")
+    private Duration leaseTimeout;
+
+    private ScheduledExecutorService leaseKeeper;
+
+    public ActiveGenerationRegistry(MessageRepository messageRepository,
+                                    ConversationService conversationService,
+                                    @Qualifier("chatBlockingScheduler") Scheduler blockingScheduler) {
+        this.messageRepository = messageRepository;
+        this.conversationService = conversationService;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    /**
+     * Start consuming chunks for the assistant message. metadata is evaluated once, when the
+     * final state is written.
+     */
+    public ActiveGeneration start(Long messageId, Flux<String> chunks, Supplier<Map<String, Object>> metadata) {
+        ActiveGeneration generation = new ActiveGeneration(messageId, metadata);
+        active.put(messageId, generation);
+        chunks.subscribe(generation::append, generation::fail, generation::complete);
+        return generation;
+    }
+
+    public Optional<ActiveGeneration> get(Long messageId) {
+        return Optional.ofNullable(active.get(messageId));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLeaseKeeper() {
+        leaseKeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = leaseTimeout.toMillis() / 3;
+        leaseKeeper.scheduleWithFixedDelay(this::maintainLeases, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopLeaseKeeper() {
+        if (leaseKeeper != null) {
+            leaseKeeper.shutdownNow();
+        }
+    }
+
+    private void maintainLeases() {
+        try {
+            if (!active.isEmpty()) {
+                messageRepository.renewStreamingLeases(List.copyOf(active.keySet()), leaseTimeout.toMillis() / 1000.0);
+            }
+            int interrupted = messageRepository.interruptExpiredStreaming();
+            if (interrupted > 0) {
+                log.info("Marked {} orphaned streaming answers as interrupted", interrupted);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to maintain streaming leases: {}", e.getMessage());
+        }
+    }
+
+    public class ActiveGeneration {
+
+        private final Long messageId;
+        private final Supplier<Map<String, Object>> metadata;
+        private final StringBuilder text = new StringBuilder();
+        private final Sinks.Many<String> sink = Sinks.many().replay().all();
+        private final AtomicBoolean flushing = new AtomicBoolean();
+        private long lastFlush = System.nanoTime();
+
+        private ActiveGeneration(Long messageId, Supplier<Map<String, Object>> metadata) {
+            this.messageId = messageId;
+            this.metadata = metadata;
+        }
+
+        /**
+         * Everything generated so far followed by the live chunks; completes after the final
+         * state has been persisted.
+         */
+        public Flux<String> chunks() {
+            return sink.asFlux();
+        }
+
+        private void append(String chunk) {
+            String snapshot = null;
+            synchronized (text) {
+                text.append(chunk);
+                long now = System.nanoTime();
+                if (now - lastFlush >= flushInterval.toNanos() && flushing.compareAndSet(false, true)) {
+                    lastFlush = now;
+                    snapshot = text.toString();
+                }
+            }
+            sink.tryEmitNext(chunk);
+            if (snapshot != null) {
+                String content = snapshot;
+                blockingScheduler.schedule(() -> {
+                    try {
+                        messageRepository.updateStreamingContent(messageId, content, TokenEstimator.estimate(content));
+                    } catch (Exception e) {
+                        log.warn("Failed to flush partial answer {}: {}", messageId, e.getMessage());
+                    } finally {
+                        flushing.set(false);
+                    }
+                });
+            }
+        }
+
+        private void complete() {
+            finish(Message.MessageStatus.COMPLETED, null);
+        }
+
+        private void fail(Throwable error) {
+            log.warn("Generation of message {} failed: {}", messageId, error.getMessage());
+            finish(Message.MessageStatus.INTERRUPTED, error);
+        }
+
+        private void finish(Message.MessageStatus status, Throwable error) {
+            String content;
+            synchronized (text) {
+                content = text.toString();
+            }
+            blockingScheduler.schedule(() -> {
+                try {
+                    conversationService.finishAssistantMessage(messageId, content, status, metadata.get());
+                } catch (Exception e) {
+                    log.warn("Failed to persist answer {}: {}", messageId, e.getMessage());
+                    if (error == null) {
+                        sink.tryEmitError(e);
+                        return;
+                    }
+                } finally {
+                    active.remove(messageId);
+                }
+                if (error != null) {
+                    sink.tryEmitError(error);
+                } else {
+                    sink.tryEmitComplete();
+                }
+            });
+        }
+    }
+}
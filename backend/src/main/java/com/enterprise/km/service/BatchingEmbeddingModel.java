@@ -0,0 +1,194 @@
+package com.enterprise.km.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmbeddingModel decorator that micro-batches concurrent requests.
+ *
+ * Every text, whether from a query embedding or an ingestion batch, is queued; a dispatcher
+ * thread collects texts until maxBatchSize is reached or maxWait has passed since the first
+ * one arrived, sends them to the delegate as one embed call and completes each caller's
+ * future. While all batch slots are busy the queue keeps filling, so batches grow with load.
+ */
+@Slf4j
+public class BatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Semaphore batchSlots;
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService batchExecutor;
+    private final Thread dispatcher;
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running = true;
+
+    public BatchingEmbeddingModel(EmbeddingModel delegate, int maxBatchSize, Duration maxWait,
+                                  int maxConcurrentBatches, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.batchSlots = new Semaphore(maxConcurrentBatches);
+        this.batchExecutor = Executors.newFixedThreadPool(maxConcurrentBatches, r -> {
+            Thread thread = new Thread(r, "embedding-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSizes = DistributionSummary.builder("km.embedding.batch.size")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        meterRegistry.gauge("km.embedding.batch.queue", queue, BlockingQueue::size);
+
+        this.dispatcher = new Thread(this::dispatch, "embedding-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return await(submit(text));
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        List<CompletableFuture<float[]>> futures = texts.stream().map(this::submit).toList();
+        List<float[]> embeddings = new ArrayList<>(futures.size());
+        for (CompletableFuture<float[]> future : futures) {
+            embeddings.add(await(future));
+        }
+        return embeddings;
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    /**
+     * Used by PgVectorStore.add (via its batching strategy); the request options are the
+     * defaults, so its texts can share batches with everything else.
+     */
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<float[]> vectors = embed(request.getInstructions());
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private CompletableFuture<float[]> submit(String text) {
+        if (!running) {
+            throw new IllegalStateException("Embedding dispatcher is shut down");
+        }
+        PendingEmbedding pending = new PendingEmbedding(text, new CompletableFuture<>());
+        queue.add(pending);
+        return pending.result();
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                PendingEmbedding first = queue.take();
+                List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingEmbedding next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                batchSlots.acquire();
+                // Texts that arrived while waiting for a slot ride along in this batch
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                batchExecutor.execute(() -> {
+                    try {
+                        embedBatch(batch);
+                    } finally {
+                        batchSlots.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void embedBatch(List<PendingEmbedding> batch) {
+        batchSizes.record(batch.size());
+        try {
+            List<String> texts = batch.stream().map(PendingEmbedding::text).toList();
+            EmbeddingResponse response = delegate.call(
+                    new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build()));
+            List<Embedding> results = response.getResults();
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException("Expected " + batch.size() + " embeddings but got " + results.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i).getOutput());
+            }
+        } catch (Exception e) {
+            log.warn("Embedding batch of {} failed: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    private static float[] await(CompletableFuture<float[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for embedding", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime
+                    ? runtime
+                    : new RuntimeException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        batchExecutor.shutdown();
+        PendingEmbedding pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(new IllegalStateException("Embedding dispatcher is shut down"));
+        }
+    }
+
+    private record PendingEmbedding(String text, CompletableFuture<float[]> result) {
+    }
+}
@@ -0,0 +1,430 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.dto.BulkImportDTO;
+import com.enterprise.km.model.BulkImport;
+import com.enterprise.km.model.IngestionJob;
+import com.enterprise.km.repository.BulkImportRepository;
+import com.enterprise.km.repository.IngestionJobRepository;
+import com.enterprise.km.repository.TenantRepository;
+import com.enterprise.km.repository.UserRepository;
+import com.enterprise.km.security.TenantContext;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Bulk import of a zip archive or (for admins) a server-local directory.
+ *
+ * The request only lands the archive on disk; a background thread then streams the entries,
+ * storing each one and queueing it as an ordinary ingestion job tagged with the import. The
+ * ingestion workers parse, embed and index those jobs in parallel like any upload, and the
+ * status resource aggregates their outcome.
+ *
+ * Archive limits are enforced on the bytes actually inflated, not the sizes the zip declares:
+ * an entry is cut off at maxFileSize, the whole extraction at maxExtractedSize, and archives
+ * with more than maxArchiveEntries entries are refused before anything is extracted.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkImportService {
+
+    private static final TypeReference<List<BulkImportDTO.FileError>> ERRORS_TYPE = new TypeReference<>() {
+    };
+    private static final int REPORTED_FAILURES = 200;
+    private static final int PROGRESS_SAVE_INTERVAL = 100;
+
+    private final BulkImportRepository importRepository;
+    private final IngestionJobRepository jobRepository;
+    private final TenantRepository tenantRepository;
+    private final UserRepository userRepository;
+    private final DocumentService documentService;
+    private final ObjectMapper objectMapper;
+    private final String importDir = "uploads/imports/";
+
+    @Value("${app.import.directory-root:}")
+    private String directoryRoot;
+
+    @Value("${app.import.max-file-size:100MB}")
+    private DataSize maxFileSize;
+
+    @Value("${app.import.max-extracted-size:10GB}")
+    private DataSize maxExtractedSize;
+
+    @Value("${app.import.max-archive-entries:10000}")
+    private int maxArchiveEntries;
+
+    @Value("${app.import.zip-charset:UTF-8}")
+    private Charset zipCharset;
+
+    @Value("${app.import.extraction-threads:2}")
+    private int extractionThreads;
+
+    private ExecutorService extractor;
+
+    @PostConstruct
+    void start() {
+        extractor = Executors.newFixedThreadPool(extractionThreads, r -> {
+            Thread thread = new Thread(r, "bulk-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        extractor.shutdownNow();
+    }
+
+    /**
+     * Land the archive on disk and extract it in the background.
+     */
+    public BulkImport importZip(MultipartFile file) {
+        BulkImport bulkImport = create(file.getOriginalFilename());
+        Path archive = Paths.get(importDir, bulkImport.getId() + "_" + UUID.randomUUID() + ".zip");
+        try {
+            Files.createDirectories(archive.getParent());
+            file.transferTo(archive.toAbsolutePath());
+        } catch (IOException e) {
+            saveProgress(bulkImport.getId(), BulkImport.ImportStatus.FAILED, 0, 0,
+                    List.of(new BulkImportDTO.FileError(file.getOriginalFilename(), e.getMessage())));
+            throw new RuntimeException("Failed to store archive", e);
+        }
+        extractor.execute(() -> extractZip(bulkImport.getId(), bulkImport.getTenant().getTenantId(), archive));
+        return bulkImport;
+    }
+
+    /**
+     * Import every regular file below a directory on this server. The directory must lie
+     * inside app.import.directory-root; the feature is off while that is unset.
+     */
+    public BulkImport importDirectory(String directory) {
+        if (directoryRoot == null || directoryRoot.isBlank()) {
+            throw new RuntimeException("Directory import is disabled");
+        }
+        Path root = Paths.get(directoryRoot).toAbsolutePath().normalize();
+        Path dir = root.resolve(directory).normalize();
+        if (!dir.startsWith(root) || !Files.isDirectory(dir)) {
+            throw new RuntimeException("Directory not found: " + directory);
+        }
+        BulkImport bulkImport = create(dir.toString());
+        extractor.execute(() -> extractDirectory(bulkImport.getId(), bulkImport.getTenant().getTenantId(), dir));
+        return bulkImport;
+    }
+
+    public BulkImportDTO getStatus(Long importId) {
+        BulkImport bulkImport = importRepository.findById(importId)
+                .orElseThrow(() -> new RuntimeException("Import not found"));
+        if (!bulkImport.getTenant().getTenantId().equals(TenantContext.getTenantId())) {
+            throw new RuntimeException("Access denied");
+        }
+
+        long succeeded = 0;
+        long failed = 0;
+        long pending = 0;
+        long chunks = 0;
+        LocalDateTime lastFinished = null;
+        for (IngestionJobRepository.StatusCount count : jobRepository.countByBulkImport(importId)) {
+            switch (count.getStatus()) {
+                case SUCCEEDED -> {
+                    succeeded = count.getJobs();
+                    chunks = count.getChunks() != null ? count.getChunks() : 0;
+                }
+                case FAILED -> failed = count.getJobs();
+                default -> pending += count.getJobs();
+            }
+            if (count.getStatus() == IngestionJob.JobStatus.SUCCEEDED || count.getStatus() == IngestionJob.JobStatus.FAILED) {
+                lastFinished = lastFinished == null || count.getLastUpdated().isAfter(lastFinished)
+                        ? count.getLastUpdated() : lastFinished;
+            }
+        }
+
+        String status = switch (bulkImport.getStatus()) {
+            case EXTRACTING -> "EXTRACTING";
+            case FAILED -> "FAILED";
+            case QUEUED -> pending > 0 ? "INGESTING" : "COMPLETED";
+        };
+        LocalDateTime end = pending > 0 || bulkImport.getStatus() == BulkImport.ImportStatus.EXTRACTING
+                || lastFinished == null ? LocalDateTime.now() : lastFinished;
+        double seconds = Math.max(Duration.between(bulkImport.getCreatedAt(), end).toMillis() / 1000.0, 1);
+
+        List<BulkImportDTO.FileError> errors = new ArrayList<>(readErrors(bulkImport.getErrors()));
+        jobRepository.findByBulkImportAndStatus(importId, IngestionJob.JobStatus.FAILED, PageRequest.of(0, REPORTED_FAILURES))
+                .forEach(f -> errors.add(new BulkImportDTO.FileError(f.getFileName(), f.getError())));
+
+        return BulkImportDTO.builder()
+                .id(bulkImport.getId())
+                .source(bulkImport.getSource())
+                .status(status)
+                .filesQueued(bulkImport.getFilesQueued())
+                .filesSkipped(bulkImport.getFilesSkipped())
+                .documentsSucceeded(succeeded)
+                .documentsFailed(failed)
+                .documentsPending(pending)
+                .chunksIndexed(chunks)
+                .documentsPerSecond(succeeded / seconds)
+                .chunksPerSecond(chunks / seconds)
+                .createdAt(bulkImport.getCreatedAt())
+                .updatedAt(bulkImport.getUpdatedAt())
+                .errors(errors)
+                .build();
+    }
+
+    private BulkImport create(String source) {
+        String tenantId = TenantContext.getTenantId();
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        BulkImport bulkImport = BulkImport.builder()
+                .tenant(tenantRepository.findByTenantId(tenantId).orElseThrow())
+                .uploadedBy(userRepository.findByUsernameAndTenantTenantId(username, tenantId).orElseThrow())
+                .source(source != null ? source : "archive.zip")
+                .build();
+        return importRepository.save(bulkImport);
+    }
+
+    private void extractZip(Long importId, String tenantId, Path archive) {
+        Extraction extraction = new Extraction(importId);
+        TenantContext.setTenantId(tenantId);
+        try (ZipFile zip = new ZipFile(archive.toFile(), zipCharset)) {
+            if (zip.size() > maxArchiveEntries) {
+                throw new IOException("Archive has " + zip.size() + " entries, more than " + maxArchiveEntries);
+            }
+            long extracted = 0;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName();
+                if (isHidden(name) || entry.getSize() == 0) {
+                    extraction.skipped++;
+                    continue;
+                }
+                if (entry.getSize() > maxFileSize.toBytes()) {
+                    extraction.reject(name, "File exceeds " + maxFileSize);
+                    continue;
+                }
+                // The declared size may lie; the stream itself stops at the limits
+                try (LimitedInputStream in = new LimitedInputStream(zip.getInputStream(entry),
+                        maxFileSize.toBytes(), maxExtractedSize.toBytes() - extracted)) {
+                    extraction.store(in, name);
+                    extracted += in.count;
+                    if (in.archiveLimitHit) {
+                        throw new IOException("Archive expands to more than " + maxExtractedSize);
+                    }
+                }
+            }
+            extraction.finish(BulkImport.ImportStatus.QUEUED);
+        } catch (Exception e) {
+            log.error("Bulk import {} failed while extracting", importId, e);
+            extraction.reject(archive.getFileName().toString(), e.getMessage());
+            extraction.finish(BulkImport.ImportStatus.FAILED);
+        } finally {
+            TenantContext.clear();
+            try {
+                Files.deleteIfExists(archive);
+            } catch (IOException e) {
+                log.warn("Failed to delete archive {}: {}", archive, e.getMessage());
+            }
+        }
+    }
+
+    private void extractDirectory(Long importId, String tenantId, Path dir) {
+        Extraction extraction = new Extraction(importId);
+        TenantContext.setTenantId(tenantId);
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String name = dir.relativize(file).toString();
+                long size = Files.size(file);
+                if (isHidden(name) || size == 0) {
+                    extraction.skipped++;
+                    continue;
+                }
+                if (size > maxFileSize.toBytes()) {
+                    extraction.reject(name, "File exceeds " + maxFileSize);
+                    continue;
+                }
+                try (InputStream in = Files.newInputStream(file)) {
+                    extraction.store(in, name);
+                }
+            }
+            extraction.finish(BulkImport.ImportStatus.QUEUED);
+        } catch (Exception e) {
+            log.error("Bulk import {} failed while walking {}", importId, dir, e);
+            extraction.reject(dir.toString(), e.getMessage());
+            extraction.finish(BulkImport.ImportStatus.FAILED);
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    private static boolean isHidden(String name) {
+        for (String part : name.replace('\\', '/').split("/")) {
+            if (part.startsWith(".") || part.equals("__MACOSX")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void saveProgress(Long importId, BulkImport.ImportStatus status, int queued, int skipped,
+                        List<BulkImportDTO.FileError> errors) {
+        importRepository.findById(importId).ifPresent(bulkImport -> {
+            bulkImport.setFilesQueued(queued);
+            bulkImport.setFilesSkipped(skipped);
+            bulkImport.setErrors(writeErrors(errors));
+            if (status != BulkImport.ImportStatus.EXTRACTING) {
+                bulkImport.setStatus(status);
+                bulkImport.setExtractedAt(LocalDateTime.now());
+            }
+            importRepository.save(bulkImport);
+        });
+    }
+
+    private List<BulkImportDTO.FileError> readErrors(String json) {
+        if (json == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(json, ERRORS_TYPE);
+        } catch (Exception e) {
+            return List.of();
+        }
+    }
+
+    private String writeErrors(List<BulkImportDTO.FileError> errors) {
+        try {
+            return errors.isEmpty() ? null : objectMapper.writeValueAsString(errors);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Counters for one running extraction; progress is saved every PROGRESS_SAVE_INTERVAL files.
+     */
+    private class Extraction {
+
+        private final Long importId;
+        private final List<BulkImportDTO.FileError> errors = new ArrayList<>();
+        private int queued;
+        private int skipped;
+
+        Extraction(Long importId) {
+            this.importId = importId;
+        }
+
+        void store(InputStream in, String name) {
+            String fileName = Paths.get(name.replace('\\', '/')).getFileName().toString();
+            try {
+                documentService.importFile(in, fileName, importId);
+                queued++;
+            } catch (Exception e) {
+                String error = in instanceof LimitedInputStream limited && limited.fileLimitHit
+                        ? "File exceeds " + maxFileSize : e.getMessage();
+                log.warn("Bulk import {}: could not queue {}: {}", importId, name, error);
+                reject(name, error);
+                return;
+            }
+            if (queued % PROGRESS_SAVE_INTERVAL == 0) {
+                saveProgress(importId, BulkImport.ImportStatus.EXTRACTING, queued, skipped, errors);
+            }
+        }
+
+        void reject(String name, String error) {
+            skipped++;
+            if (errors.size() < REPORTED_FAILURES) {
+                errors.add(new BulkImportDTO.FileError(name, error));
+            }
+        }
+
+        void finish(BulkImport.ImportStatus status) {
+            saveProgress(importId, status, queued, skipped, errors);
+            log.info("Bulk import {} extracted: {} files queued, {} skipped", importId, queued, skipped);
+        }
+    }
+
+    /**
+     * Counts what an archive entry inflates to and fails the read (so the partly written file
+     * is deleted) once it passes the per-file limit or what is left of the archive limit.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long fileLimit;
+        private final long archiveRemaining;
+        private long count;
+        private boolean fileLimitHit;
+        private boolean archiveLimitHit;
+
+        LimitedInputStream(InputStream in, long fileLimit, long archiveRemaining) {
+            super(in);
+            this.fileLimit = fileLimit;
+            this.archiveRemaining = archiveRemaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                counted(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                counted(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counted(skipped);
+            return skipped;
+        }
+
+        private void counted(long n) throws IOException {
+            count += n;
+            if (count > archiveRemaining) {
+                archiveLimitHit = true;
+            } else if (count > fileLimit) {
+                fileLimitHit = true;
+            }
+            if (archiveLimitHit || fileLimitHit) {
+                throw new IOException("Extraction limit exceeded");
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.security.TenantContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * EmbeddingModel decorator that caches single-text embeddings (the query path used by
+ * {@code VectorStore.similaritySearch}) in a bounded LRU with a TTL.
+ *
+ * Keys are tenant + model + normalized text, and the normalized text is also what gets
+ * embedded, so a cached vector does not depend on which spelling arrived first. Callers get
+ * their own copy of the array. Batch and document embeddings used during ingestion go
+ * straight to the delegate and never enter the cache.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final String modelName;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, CacheEntry> cache;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String modelName, int maxSize, Duration ttl,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > CachingEmbeddingModel.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.hits = meterRegistry.counter("km.embedding.cache", "result", "hit");
+        this.misses = meterRegistry.counter("km.embedding.cache", "result", "miss");
+        this.evictions = meterRegistry.counter("km.embedding.cache.evictions");
+        meterRegistry.gauge("km.embedding.cache.size", this, CachingEmbeddingModel::size);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String normalized = normalize(text);
+        String key = cacheKey(normalized);
+        long now = System.currentTimeMillis();
+
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() > now) {
+                    hits.increment();
+                    return entry.embedding().clone();
+                }
+                cache.remove(key);
+                evictions.increment();
+            }
+        }
+
+        misses.increment();
+        float[] embedding = delegate.embed(normalized);
+        synchronized (cache) {
+            cache.put(key, new CacheEntry(embedding.clone(), now + ttlMillis));
+        }
+        return embedding;
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        return delegate.embed(texts);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private double size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private String cacheKey(String normalized) {
+        String tenantId = TenantContext.getTenantId();
+        return (tenantId != null ? tenantId : "") + '\u0000' + modelName + '\u0000' + normalized;
+    }
+
+    /**
+     * NFKC folds full-width characters, then whitespace is collapsed and case folded,
+     * so "报销流程 " and "报销流程" share one entry.
+     */
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC)
+                .strip()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private record CacheEntry(float[] embedding, long expiresAt) {
+    }
+}
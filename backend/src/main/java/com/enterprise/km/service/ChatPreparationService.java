@@ -0,0 +1,112 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.dto.ChatRequest;
+import com.enterprise.km.dto.SourceReference;
+import com.enterprise.km.model.Conversation;
+import com.enterprise.km.model.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the independent steps before generation concurrently: retrieval starts immediately,
+ * and once the conversation is resolved its history load and the user-message insert run
+ * side by side. Tenant and security context follow the tasks onto the pool threads.
+ */
+@Service
+@Slf4j
+public class ChatPreparationService {
+
+    private final ConversationService conversationService;
+    private final RAGService ragService;
+    private final ThreadPoolTaskExecutor executor;
+
+    public ChatPreparationService(ConversationService conversationService,
+                                  RAGService ragService,
+                                  @Qualifier("chatPreparationExecutor") ThreadPoolTaskExecutor executor) {
+        this.conversationService = conversationService;
+        this.ragService = ragService;
+        this.executor = executor;
+    }
+
+    public PreparedChat prepare(ChatRequest request, double threshold) {
+        CompletableFuture<RAGService.Retrieval> retrieval = supply(() -> ragService.retrieve(
+                request.getQuestion(),
+                request.getTopK(),
+                threshold,
+                request.getDepartmentId(),
+                Boolean.TRUE.equals(request.getHybrid())
+        ));
+
+        Conversation conversation;
+        try {
+            // Create new conversation or use existing one (also the access check)
+            conversation = request.getConversationId() == null
+                    ? conversationService.createConversation(title(request.getQuestion()))
+                    : conversationService.getConversation(request.getConversationId());
+        } catch (RuntimeException e) {
+            retrieval.cancel(false);
+            throw e;
+        }
+
+        Long conversationId = conversation.getId();
+        CompletableFuture<Message> userMessage = supply(() -> conversationService.addMessage(
+                conversationId, Message.MessageRole.USER, request.getQuestion()));
+        CompletableFuture<ConversationMemory> history = request.getConversationId() == null
+                ? CompletableFuture.completedFuture(ConversationMemory.EMPTY)
+                : supply(() -> conversationService.getConversationMemory(conversationId));
+
+        // The history read may already see the message being inserted alongside it
+        CompletableFuture<ConversationMemory> priorHistory = history.thenCombine(userMessage,
+                (memory, saved) -> memory.withoutMessage(saved.getId()));
+
+        // Sources go to the client before generation starts, so describe them as soon as retrieval returns
+        CompletableFuture<List<SourceReference>> sources = retrieval.thenApplyAsync(ragService::sources, executor);
+
+        return new PreparedChat(conversation, userMessage, priorHistory, retrieval, sources);
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    private static String title(String question) {
+        // Extract first few words from question as title
+        return question.length() > 30 ? question.substring(0, 30) + "..." : question;
+    }
+
+    /**
+     * Wait for a preparation step, rethrowing its original exception.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Chat preparation interrupted", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof RuntimeException runtime ? runtime : new RuntimeException(error);
+    }
+
+    public record PreparedChat(Conversation conversation,
+                               CompletableFuture<Message> userMessage,
+                               CompletableFuture<ConversationMemory> history,
+                               CompletableFuture<RAGService.Retrieval> retrieval,
+                               CompletableFuture<List<SourceReference>> sources) {
+    }
+}
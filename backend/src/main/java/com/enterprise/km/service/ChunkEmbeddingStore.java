@@ -0,0 +1,78 @@
+package com.enterprise.km.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeddings keyed by (content SHA-256, embedding model), shared across documents and tenants.
+ * Only the vector is stored, never the text, so a lookup cannot reveal another tenant's content.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChunkEmbeddingStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Map<String, float[]> find(String model, Collection<String> hashes) {
+        Map<String, float[]> found = new HashMap<>();
+        if (hashes.isEmpty()) {
+            return found;
+        }
+        jdbcTemplate.query(
+                "SELECT content_hash, embedding::text AS embedding FROM chunk_embeddings "
+                        + "WHERE embedding_model = ? AND content_hash = ANY (?)",
+                (RowCallbackHandler) rs -> found.put(rs.getString("content_hash"),
+                        parseVector(rs.getString("embedding"))),
+                model, hashes.toArray(String[]::new));
+        return found;
+    }
+
+    /**
+     * Store new embeddings; rows another worker inserted first are left as they are.
+     */
+    public void save(String model, Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, float[]>> rows = List.copyOf(embeddings.entrySet());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO chunk_embeddings (content_hash, embedding_model, embedding) "
+                        + "VALUES (?, ?, CAST(? AS vector)) ON CONFLICT DO NOTHING",
+                rows, rows.size(), (ps, row) -> {
+                    ps.setString(1, row.getKey());
+                    ps.setString(2, model);
+                    ps.setString(3, toVectorLiteral(row.getValue()));
+                });
+    }
+
+    private static String toVectorLiteral(float[] vector) {
+        StringBuilder literal = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(vector[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    private static float[] parseVector(String literal) {
+        String body = literal.substring(1, literal.length() - 1);
+        if (body.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+}
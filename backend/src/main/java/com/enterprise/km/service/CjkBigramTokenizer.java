@@ -0,0 +1,120 @@
+package com.enterprise.km.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tokenizer for the lexical index on document_chunks.
+ *
+ * Latin letters and digits form lowercase word tokens; runs of CJK characters are split
+ * into overlapping bigrams ("报销流程" -> 报销, 销流, 流程), which needs no dictionary and
+ * matches any substring of two or more characters. Index and query side must both use it.
+ */
+public final class CjkBigramTokenizer {
+
+    private CjkBigramTokenizer() {
+    }
+
+    /**
+     * Distinct tokens of the text in first-occurrence order.
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        Set<String> tokens = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        StringBuilder cjk = new StringBuilder();
+
+        int i = 0;
+        while (i < normalized.length()) {
+            int cp = normalized.codePointAt(i);
+            if (isCjk(cp)) {
+                flushWord(word, tokens);
+                cjk.appendCodePoint(cp);
+            } else if (Character.isLetterOrDigit(cp)) {
+                flushCjk(cjk, tokens);
+                word.appendCodePoint(cp);
+            } else {
+                flushWord(word, tokens);
+                flushCjk(cjk, tokens);
+            }
+            i += Character.charCount(cp);
+        }
+        flushWord(word, tokens);
+        flushCjk(cjk, tokens);
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Space separated tokens, stored in document_chunks.search_tokens.
+     */
+    public static String toIndexText(String text) {
+        return String.join(" ", tokenize(text));
+    }
+
+    /**
+     * OR query in tsquery syntax, for recall-oriented retrieval; null when the text has no tokens.
+     */
+    public static String toTsQuery(String text) {
+        return joinTsQuery(tokenize(text), " | ");
+    }
+
+    /**
+     * AND query in tsquery syntax, for keyword search: a document must contain every token, so
+     * "报销流程" needs all of 报销, 销流 and 流程 rather than any one of them. The index keeps
+     * no positions, so this is the closest available approximation of a phrase match.
+     */
+    public static String toAllTsQuery(String text) {
+        return joinTsQuery(tokenize(text), " & ");
+    }
+
+    private static String joinTsQuery(List<String> tokens, String operator) {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String token : tokens) {
+            if (!query.isEmpty()) {
+                query.append(operator);
+            }
+            query.append('\'').append(token.replace("'", "''").replace("\\", "\\\\")).append('\'');
+        }
+        return query.toString();
+    }
+
+    private static void flushWord(StringBuilder word, Set<String> tokens) {
+        if (!word.isEmpty()) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(StringBuilder cjk, Set<String> tokens) {
+        int length = cjk.codePointCount(0, cjk.length());
+        if (length == 1) {
+            tokens.add(cjk.toString());
+        } else {
+            int start = 0;
+            for (int n = 0; n < length - 1; n++) {
+                int end = cjk.offsetByCodePoints(start, 2);
+                tokens.add(cjk.substring(start, end));
+                start = cjk.offsetByCodePoints(start, 1);
+            }
+        }
+        cjk.setLength(0);
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
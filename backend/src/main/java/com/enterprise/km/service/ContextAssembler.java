@@ -0,0 +1,155 @@
+package com.enterprise.km.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns retrieved chunks into the prompt context.
+ *
+ * Chunks are picked greedily by MMR (relevance minus similarity to what is already picked),
+ * near-duplicates are dropped, and selection stops at the token budget. Relevance comes from
+ * the position in the retrieved list, which is the fused order in hybrid mode: vector
+ * distances and lexical ranks are not on one scale. The picked chunks
+ * are then grouped per document, consecutive chunkIndex runs are merged into one section
+ * (chunks are cut without overlap, so they are joined line by line), and documents are
+ * emitted in order of their best-ranked chunk.
+ */
+@Component
+public class ContextAssembler {
+
+    @Value("${app.rag.context.max-tokens:2000}")
+    private int maxTokens;
+
+    @Value("${app.rag.context.mmr-lambda:0.7}")
+    private double mmrLambda;
+
+    @Value("${app.rag.context.dedup-similarity:0.85}")
+    private double dedupSimilarity;
+
+    public String assemble(List<Document> documents) {
+        List<Candidate> candidates = new ArrayList<>(documents.size());
+        for (int rank = 0; rank < documents.size(); rank++) {
+            Document document = documents.get(rank);
+            candidates.add(new Candidate(document, rank, 1.0 - (double) rank / documents.size(),
+                    new HashSet<>(CjkBigramTokenizer.tokenize(document.getContent())),
+                    TokenEstimator.estimate(document.getContent())));
+        }
+
+        List<Candidate> selected = select(candidates);
+        return merge(selected);
+    }
+
+    private List<Candidate> select(List<Candidate> candidates) {
+        List<Candidate> remaining = new ArrayList<>(candidates);
+        List<Candidate> selected = new ArrayList<>();
+        int usedTokens = 0;
+
+        while (!remaining.isEmpty()) {
+            Candidate best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            double bestRedundancy = 0;
+            for (Candidate candidate : remaining) {
+                double redundancy = 0;
+                for (Candidate picked : selected) {
+                    redundancy = Math.max(redundancy, jaccard(candidate.terms(), picked.terms()));
+                }
+                double score = mmrLambda * candidate.relevance() - (1 - mmrLambda) * redundancy;
+                if (score > bestScore) {
+                    best = candidate;
+                    bestScore = score;
+                    bestRedundancy = redundancy;
+                }
+            }
+
+            remaining.remove(best);
+            if (bestRedundancy >= dedupSimilarity) {
+                continue;
+            }
+            if (usedTokens + best.tokenCount() > maxTokens) {
+                // The most relevant chunk alone exceeds the budget: keep as much of it as fits
+                if (selected.isEmpty()) {
+                    selected.add(truncate(best));
+                    break;
+                }
+                continue;
+            }
+            selected.add(best);
+            usedTokens += best.tokenCount();
+        }
+        return selected;
+    }
+
+    private String merge(List<Candidate> selected) {
+        Map<Object, List<Candidate>> byDocument = new LinkedHashMap<>();
+        selected.stream()
+                .sorted(Comparator.comparingInt(Candidate::rank))
+                .forEach(c -> byDocument.computeIfAbsent(documentKey(c), k -> new ArrayList<>()).add(c));
+
+        List<String> sections = new ArrayList<>();
+        for (List<Candidate> group : byDocument.values()) {
+            group.sort(Comparator.comparingInt(ContextAssembler::chunkIndex));
+            StringBuilder section = new StringBuilder();
+            int previousIndex = Integer.MIN_VALUE;
+            for (Candidate candidate : group) {
+                String content = candidate.document().getContent();
+                int index = chunkIndex(candidate);
+                if (section.isEmpty()) {
+                    section.append(content);
+                } else if (index != Integer.MAX_VALUE && index == previousIndex + 1) {
+                    section.append('\n').append(content);
+                } else {
+                    sections.add(section.toString());
+                    section.setLength(0);
+                    section.append(content);
+                }
+                previousIndex = index;
+            }
+            sections.add(section.toString());
+        }
+        return String.join("\n\n", sections);
+    }
+
+    private Candidate truncate(Candidate candidate) {
+        Document document = candidate.document();
+        String content = TokenEstimator.truncate(document.getContent(), maxTokens);
+        return new Candidate(new Document(document.getId(), content, document.getMetadata()), candidate.rank(),
+                candidate.relevance(), candidate.terms(), TokenEstimator.estimate(content));
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (String token : smaller) {
+            if (larger.contains(token)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    private static Object documentKey(Candidate candidate) {
+        Object documentId = candidate.document().getMetadata().get(VectorMetadata.DOCUMENT_ID);
+        return documentId != null ? documentId.toString() : candidate.document().getId();
+    }
+
+    private static int chunkIndex(Candidate candidate) {
+        Object index = candidate.document().getMetadata().get(VectorMetadata.CHUNK_INDEX);
+        return index instanceof Number n ? n.intValue() : Integer.MAX_VALUE;
+    }
+
+    private record Candidate(Document document, int rank, double relevance, Set<String> terms, int tokenCount) {
+    }
+}
@@ -0,0 +1,48 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.Message;
+
+import java.util.List;
+
+/**
+ * What a prompt sees of a conversation: the running summary of older turns plus the
+ * most recent messages that fit the history token budget.
+ */
+public record ConversationMemory(String summary, List<Message> recentMessages) {
+
+    public static final ConversationMemory EMPTY = new ConversationMemory(null, List.of());
+
+    public boolean isEmpty() {
+        return (summary == null || summary.isBlank()) && recentMessages.isEmpty();
+    }
+
+    public ConversationMemory withoutMessage(Long messageId) {
+        return new ConversationMemory(summary, recentMessages.stream()
+                .filter(m -> !m.getId().equals(messageId))
+                .toList());
+    }
+
+    /**
+     * Index of the oldest message in the newest suffix of messages whose token counts fit maxTokens.
+     */
+    public static int recentStart(List<Message> messages, int maxTokens) {
+        int used = 0;
+        int start = messages.size();
+        while (start > 0) {
+            int tokens = tokens(messages.get(start - 1));
+            if (used + tokens > maxTokens) {
+                break;
+            }
+            used += tokens;
+            start--;
+        }
+        return start;
+    }
+
+    public static int tokens(Message message) {
+        // Rows written before token counting was added have no count
+        return message.getTokenCount() != null
+                ? message.getTokenCount()
+                : TokenEstimator.estimate(message.getContent());
+    }
+}
@@ -9,15 +9,23 @@ import com.enterprise.km.repository.MessageRepository;
 import com.enterprise.km.repository.TenantRepository;
 import com.enterprise.km.repository.UserRepository;
 import com.enterprise.km.security.TenantContext;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -28,6 +36,14 @@ public class ConversationService {
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final TenantRepository tenantRepository;
+    private final ConversationSummaryService summaryService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.chat.memory.recent-max-tokens:1500}")
+    private int recentMaxTokens;
+
+    @Value("${app.chat.stream.lease-timeout:PT1M}")
+    private Duration leaseTimeout;
 
     @Transactional
     public Conversation createConversation(String title) {
@@ -70,19 +86,125 @@ public class ConversationService {
         return messageRepository.findByConversationId(conversationId);
     }
 
+    /**
+     * Summary plus the newest messages not yet folded into it, trimmed to the history token budget.
+     */
+    public ConversationMemory getConversationMemory(Long conversationId) {
+        Conversation conversation = getConversation(conversationId);
+        Long summarizedUntil = conversation.getSummarizedUntilMessageId();
+        // Answers still streaming or cut short are not part of the history the model sees
+        List<Message> pending = messageRepository.findByConversationIdAfter(conversationId,
+                summarizedUntil != null ? summarizedUntil : 0L).stream()
+                .filter(Message::isComplete)
+                .toList();
+        List<Message> recent = pending.subList(ConversationMemory.recentStart(pending, recentMaxTokens), pending.size());
+        return new ConversationMemory(conversation.getSummary(), List.copyOf(recent));
+    }
+
     @Transactional
     public Message addMessage(Long conversationId, Message.MessageRole role, String content) {
+        return addMessage(conversationId, role, content, null);
+    }
+
+    /**
+     * Add a message with metadata (e.g. the retrieval sources of an answer), stored as JSON.
+     */
+    @Transactional
+    public Message addMessage(Long conversationId, Message.MessageRole role, String content,
+                              Map<String, Object> metadata) {
         Conversation conversation = getConversation(conversationId);
 
         Message message = Message.builder()
                 .conversation(conversation)
                 .role(role)
                 .content(content)
+                .tokenCount(TokenEstimator.estimate(content))
+                .metadata(toJson(metadata))
+                .build();
+
+        Message saved = messageRepository.save(message);
+        if (role == Message.MessageRole.ASSISTANT) {
+            // A turn just completed; fold overflowing history into the summary once committed
+            compactAfterCommit(conversationId);
+        }
+        return saved;
+    }
+
+    /**
+     * Create the assistant row of a streaming answer before generation starts, so a client
+     * that reconnects can find it while it is being filled in.
+     */
+    @Transactional
+    public Message startAssistantMessage(Long conversationId) {
+        Conversation conversation = getConversation(conversationId);
+
+        Message message = Message.builder()
+                .conversation(conversation)
+                .role(Message.MessageRole.ASSISTANT)
+                .content("")
+                .tokenCount(0)
+                .status(Message.MessageStatus.STREAMING)
+                .leaseUntil(LocalDateTime.now().plus(leaseTimeout))
                 .build();
 
         return messageRepository.save(message);
     }
 
+    /**
+     * Write the final state of a streaming answer. Called from the generation pipeline, which
+     * has no request context; the caller created the message through startAssistantMessage.
+     */
+    @Transactional
+    public void finishAssistantMessage(Long messageId, String content, Message.MessageStatus status,
+                                       Map<String, Object> metadata) {
+        Message message = messageRepository.findById(messageId)
+                .orElseThrow(() -> new RuntimeException("Message not found: " + messageId));
+        message.setContent(content);
+        message.setTokenCount(TokenEstimator.estimate(content));
+        message.setStatus(status);
+        message.setLeaseUntil(null);
+        if (metadata != null) {
+            message.setMetadata(toJson(metadata));
+        }
+        messageRepository.save(message);
+
+        if (status == Message.MessageStatus.COMPLETED) {
+            compactAfterCommit(message.getConversation().getId());
+        }
+    }
+
+    public Message getMessage(Long conversationId, Long messageId) {
+        // Verify access
+        getConversation(conversationId);
+        return messageRepository.findById(messageId)
+                .filter(m -> m.getConversation().getId().equals(conversationId) && !m.getDeleted())
+                .orElseThrow(() -> new RuntimeException("消息不存在或无权访问: " + messageId));
+    }
+
+    private String toJson(Map<String, Object> metadata) {
+        if (metadata == null || metadata.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(metadata);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize message metadata", e);
+        }
+    }
+
+    private void compactAfterCommit(Long conversationId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            summaryService.scheduleCompaction(conversationId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                summaryService.scheduleCompaction(conversationId);
+            }
+        });
+    }
+
     @Transactional
     public void deleteConversation(Long conversationId) {
         Conversation conversation = getConversation(conversationId);
@@ -0,0 +1,166 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.Conversation;
+import com.enterprise.km.model.Message;
+import com.enterprise.km.repository.ConversationRepository;
+import com.enterprise.km.repository.MessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Background compaction of conversation history.
+ *
+ * Messages that no longer fit the recent-history token budget are folded into a running
+ * summary stored on the Conversation, so the prompt stays bounded by summary + budget
+ * however long the conversation grows. At most one compaction runs per conversation. Only
+ * finished messages are folded, and summary generations go through {@link GenerationScheduler}
+ * at background priority.
+ */
+@Service
+@Slf4j
+public class ConversationSummaryService {
+
+    private static final String SUMMARY_PROMPT = """
+            请将以下对话内容合并进已有的对话摘要，生成一份新的摘要。
+            保留用户关心的问题、得到的关键结论、涉及的文档和术语，省略寒暄和重复内容。
+            摘要不超过%d字，只输出摘要本身。
+
+            已有摘要：
+            %s
+
+            新的对话内容：
+            %s
+            """;
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final ChatClient.Builder chatClientBuilder;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor executor;
+    private final GenerationScheduler generationScheduler;
+
+    private final Set<Long> compacting = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.chat.memory.recent-max-tokens:1500}")
+    private int recentMaxTokens;
+
+    @Value("${app.chat.memory.summary-max-chars:800}")
+    private int summaryMaxChars;
+
+    public ConversationSummaryService(ConversationRepository conversationRepository,
+                                      MessageRepository messageRepository,
+                                      ChatClient.Builder chatClientBuilder,
+                                      TransactionTemplate transactionTemplate,
+                                      @Qualifier("conversationSummaryExecutor") ThreadPoolTaskExecutor executor,
+                                      GenerationScheduler generationScheduler) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.chatClientBuilder = chatClientBuilder;
+        this.transactionTemplate = transactionTemplate;
+        this.executor = executor;
+        this.generationScheduler = generationScheduler;
+    }
+
+    /**
+     * Queue a compaction for the conversation unless one is already pending or running.
+     * A rejected task is harmless: the next completed turn schedules it again.
+     */
+    public void scheduleCompaction(Long conversationId) {
+        if (!compacting.add(conversationId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    compact(conversationId);
+                } catch (Exception e) {
+                    log.warn("Failed to compact conversation {}: {}", conversationId, e.getMessage());
+                } finally {
+                    compacting.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compacting.remove(conversationId);
+        }
+    }
+
+    private void compact(Long conversationId) {
+        Conversation conversation = transactionTemplate.execute(status -> {
+            Conversation c = conversationRepository.findById(conversationId).orElse(null);
+            if (c != null) {
+                Hibernate.initialize(c.getTenant());
+            }
+            return c;
+        });
+        if (conversation == null || Boolean.TRUE.equals(conversation.getDeleted())) {
+            return;
+        }
+        Long summarizedUntil = conversation.getSummarizedUntilMessageId();
+        List<Message> pending = messageRepository.findByConversationIdAfter(conversationId,
+                summarizedUntil != null ? summarizedUntil : 0L);
+
+        // The prompt keeps the newest complete messages that fit the budget; everything older
+        // is folded, but never past an answer that is still streaming
+        List<Message> complete = pending.stream().filter(Message::isComplete).toList();
+        int recentStart = ConversationMemory.recentStart(complete, recentMaxTokens);
+        Message firstRecent = recentStart < complete.size() ? complete.get(recentStart) : null;
+        int end = 0;
+        while (end < pending.size() && pending.get(end) != firstRecent && !pending.get(end).isStreaming()) {
+            end++;
+        }
+        if (end == 0) {
+            return;
+        }
+        // Interrupted partial answers are skipped, not summarized
+        List<Message> toFold = pending.subList(0, end).stream().filter(Message::isComplete).toList();
+        String summary = toFold.isEmpty()
+                ? conversation.getSummary()
+                : summarize(conversation.getTenant().getTenantId(), conversation.getSummary(), toFold);
+        Long foldedUntil = pending.get(end - 1).getId();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Conversation current = conversationRepository.findById(conversationId).orElse(null);
+            // Another node may have compacted the same range meanwhile
+            if (current == null || !Objects.equals(current.getSummarizedUntilMessageId(), summarizedUntil)) {
+                return;
+            }
+            current.setSummary(summary);
+            current.setSummarizedUntilMessageId(foldedUntil);
+            conversationRepository.save(current);
+        });
+        log.info("Folded {} messages into summary of conversation {}", end, conversationId);
+    }
+
+    private String summarize(String tenantId, String previousSummary, List<Message> messages) {
+        StringBuilder transcript = new StringBuilder();
+        for (Message message : messages) {
+            if (message.getRole() == Message.MessageRole.SYSTEM) {
+                continue;
+            }
+            transcript.append(message.getRole() == Message.MessageRole.USER ? "用户：" : "助手：")
+                    .append(message.getContent())
+                    .append('\n');
+        }
+        String prompt = SUMMARY_PROMPT.formatted(summaryMaxChars,
+                previousSummary != null && !previousSummary.isBlank() ? previousSummary : "（无）",
+                transcript);
+        // Same admission control as chat, at background priority
+        return generationScheduler.runBackground(tenantId, () -> chatClientBuilder.build()
+                .prompt()
+                .user(prompt)
+                .call()
+                .content());
+    }
+}
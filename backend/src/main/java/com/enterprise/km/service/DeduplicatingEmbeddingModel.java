@@ -0,0 +1,131 @@
+package com.enterprise.km.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EmbeddingModel decorator that reuses stored vectors for texts embedded before.
+ *
+ * Batch embeddings (vector store adds during ingestion) are keyed by SHA-256 of the text and
+ * the model name; texts found in {@link ChunkEmbeddingStore} skip the delegate, repeated texts
+ * within one request are embedded once, and fresh vectors are stored for the next upload.
+ * Single-text (query) embeddings pass straight through.
+ */
+public class DeduplicatingEmbeddingModel implements EmbeddingModel {
+
+    private static final ThreadLocal<Usage> CURRENT_USAGE = new ThreadLocal<>();
+
+    private final EmbeddingModel delegate;
+    private final ChunkEmbeddingStore store;
+    private final String modelName;
+    private final Counter reused;
+    private final Counter computed;
+
+    public DeduplicatingEmbeddingModel(EmbeddingModel delegate, ChunkEmbeddingStore store, String modelName,
+                                       MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.store = store;
+        this.modelName = modelName;
+        this.reused = meterRegistry.counter("km.embedding.dedup", "result", "reused");
+        this.computed = meterRegistry.counter("km.embedding.dedup", "result", "computed");
+    }
+
+    /**
+     * Count texts embedded and reused on this thread until the returned Usage is closed.
+     */
+    public static Usage track() {
+        Usage usage = new Usage();
+        CURRENT_USAGE.set(usage);
+        return usage;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return delegate.embed(text);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        List<String> hashes = texts.stream().map(ContentHash::of).toList();
+        Map<String, float[]> vectors = new LinkedHashMap<>(store.find(modelName, hashes));
+
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!vectors.containsKey(hashes.get(i))) {
+                missing.putIfAbsent(hashes.get(i), texts.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<float[]> fresh = delegate.embed(List.copyOf(missing.values()));
+            Map<String, float[]> created = new LinkedHashMap<>();
+            int i = 0;
+            for (String hash : missing.keySet()) {
+                created.put(hash, fresh.get(i++));
+            }
+            store.save(modelName, created);
+            vectors.putAll(created);
+        }
+
+        int saved = texts.size() - missing.size();
+        reused.increment(saved);
+        computed.increment(missing.size());
+        Usage usage = CURRENT_USAGE.get();
+        if (usage != null) {
+            usage.texts += texts.size();
+            usage.reused += saved;
+        }
+        return hashes.stream().map(vectors::get).toList();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<float[]> vectors = embed(request.getInstructions());
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * Per-thread tally of texts sent for embedding and how many were served from the store.
+     */
+    public static final class Usage implements AutoCloseable {
+
+        private int texts;
+        private int reused;
+
+        public int texts() {
+            return texts;
+        }
+
+        public int reused() {
+            return reused;
+        }
+
+        @Override
+        public void close() {
+            CURRENT_USAGE.remove();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.DocumentChunk;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Bulk insert path for document chunks.
+ *
+ * BaseEntity ids are IDENTITY columns, which makes Hibernate flush every chunk as its own
+ * INSERT. Chunks are written once and never updated through the entity during ingestion, so
+ * a JDBC batch is used instead; with reWriteBatchedInserts on the JDBC URL the driver folds
+ * each batch into multi-row INSERTs.
+ */
+@Component
+@Slf4j
+public class DocumentChunkWriter {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO document_chunks (document_id, content, chunk_index, chunk_size, vector_id,
+                content_hash, search_tokens, created_at, updated_at, deleted)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, false)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter chunksWritten;
+    private final Timer writeTimer;
+
+    public DocumentChunkWriter(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunksWritten = Counter.builder("km.ingestion.chunks.written")
+                .description("Document chunks inserted by the bulk writer")
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("km.ingestion.chunks.batch")
+                .description("Time to insert one batch of document chunks")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Insert the chunks in one JDBC batch. Ids are not read back; chunks are looked up by
+     * document and vectorId afterwards.
+     */
+    public void insert(Long documentId, List<DocumentChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        writeTimer.record(() -> jdbcTemplate.batchUpdate(INSERT_SQL, chunks, chunks.size(), (ps, chunk) -> {
+            ps.setLong(1, documentId);
+            ps.setString(2, chunk.getContent());
+            ps.setInt(3, chunk.getChunkIndex());
+            ps.setInt(4, chunk.getChunkSize());
+            ps.setString(5, chunk.getVectorId());
+            ps.setString(6, chunk.getContentHash());
+            if (chunk.getSearchTokens() != null) {
+                ps.setString(7, chunk.getSearchTokens());
+            } else {
+                ps.setNull(7, Types.VARCHAR);
+            }
+            ps.setTimestamp(8, now);
+            ps.setTimestamp(9, now);
+        }));
+        chunksWritten.increment(chunks.size());
+    }
+}
@@ -0,0 +1,12 @@
+package com.enterprise.km.service;
+
+/**
+ * Thrown to an ingestion worker when the document it is indexing was deleted under it;
+ * the job is gone with it, so there is nothing to fail or retry.
+ */
+public class DocumentDeletedException extends RuntimeException {
+
+    public DocumentDeletedException(Long documentId) {
+        super("Document " + documentId + " was deleted during ingestion");
+    }
+}
@@ -1,36 +1,269 @@
 package com.enterprise.km.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.Tika;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.fork.ForkParser;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.SAXException;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Text extraction for uploaded files.
+ *
+ * Tika parses run on a small pool of low-priority threads through one shared, thread-safe
+ * parser (or a ForkParser, which runs them in child JVMs with their own heap) and stream
+ * their text through {@link StreamingChunker}. Every parse has a silence timeout, a total
+ * deadline and a character limit; a parse that overruns is interrupted and its thread keeps
+ * holding a pool slot until it really stops, so runaway parses can never occupy more than
+ * the pool. A parser spinning without emitting text may never notice the interrupt; the
+ * fork parser is the remedy for such files, since its child JVM is killed on timeout.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentParserService {
 
+    // Document.content keeps only a preview of the text
+    static final int HEAD_CHARS = 5000;
+    private static final int CHUNK_QUEUE_CAPACITY = 16;
+    private static final long POLL_MILLIS = 200;
+
+    private final MeterRegistry meterRegistry;
     private final Tika tika = new Tika();
 
-    public String parseDocument(MultipartFile file) {
+    @Value("${app.parser.max-concurrent:0}")
+    private int maxConcurrent;
+
+    @Value("${app.parser.timeout:PT2M}")
+    private Duration timeout;
+
+    @Value("${app.parser.max-duration:PT30M}")
+    private Duration maxDuration;
+
+    @Value("${app.parser.max-chars:5000000}")
+    private int maxChars;
+
+    @Value("${app.parser.fork.enabled:false}")
+    private boolean forkEnabled;
+
+    @Value("${app.parser.fork.pool-size:2}")
+    private int forkPoolSize;
+
+    @Value("${app.parser.fork.max-heap:512m}")
+    private String forkMaxHeap;
+
+    private Parser parser;
+    private ExecutorService parseExecutor;
+    private Semaphore slots;
+
+    @PostConstruct
+    void start() {
+        if (maxConcurrent <= 0) {
+            maxConcurrent = Runtime.getRuntime().availableProcessors();
+        }
+        if (forkEnabled) {
+            ForkParser forkParser = new ForkParser(DocumentParserService.class.getClassLoader(), new AutoDetectParser());
+            forkParser.setJavaCommand(List.of("java", "-Xmx" + forkMaxHeap, "-Djava.awt.headless=true"));
+            forkParser.setPoolSize(forkPoolSize);
+            forkParser.setServerParseTimeoutMillis(timeout.toMillis());
+            parser = forkParser;
+        } else {
+            parser = new AutoDetectParser();
+        }
+        slots = new Semaphore(maxConcurrent);
+        parseExecutor = Executors.newFixedThreadPool(maxConcurrent, r -> {
+            Thread thread = new Thread(r, "document-parser");
+            thread.setDaemon(true);
+            // Parsing is background work; chat request threads win any contention for CPU
+            thread.setPriority(Thread.NORM_PRIORITY - 2);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        parseExecutor.shutdownNow();
+        if (parser instanceof ForkParser forkParser) {
+            forkParser.close();
+        }
+    }
+
+    /**
+     * Extract a stored file's text and hand it to {@code consumer} chunk by chunk as the parser
+     * produces it (used by ingestion workers).
+     *
+     * The parse runs on the parser pool and the consumer on the calling thread, joined by a
+     * small queue: when embedding and persistence fall behind, the parser blocks, so memory
+     * holds a few chunks rather than the document. The timeout measures parser silence, i.e.
+     * it fires when no chunk has arrived for that long; maxDuration bounds the whole call, so a
+     * parse that trickles out text can't run forever either. Waiting for a free parser slot is
+     * bounded by the timeout too, and fails the call rather than stalling the worker past its lease.
+     */
+    public ParseResult parseChunks(Path path, String filename, ChunkConsumer consumer) {
         try {
-            return parseDocumentContent(file.getInputStream(), file.getOriginalFilename());
+            return streamChunks(path, filename, consumer);
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Error parsing document: {}", file.getOriginalFilename(), e);
+            log.error("Error parsing document: {}", filename, e);
             throw new RuntimeException("Failed to parse document", e);
         }
     }
 
-    private String parseDocumentContent(InputStream inputStream, String filename) throws Exception {
-        String fileType = getFileType(filename);
+    private ParseResult streamChunks(Path path, String filename, ChunkConsumer consumer) throws Exception {
+        String mime = mimeTag(detectMimeType(path));
+        boolean plainText = isPlainText(filename);
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(CHUNK_QUEUE_CAPACITY);
+        if (!slots.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new RuntimeException("No parser free for " + timeout + " to parse " + filename);
+        }
+        long started = System.nanoTime();
+        long deadline = started + maxDuration.toNanos();
+        Future<ParseResult> parse;
+        try {
+            parse = parseExecutor.submit(() -> {
+                try {
+                    return extract(path, filename, plainText, chunks);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
 
-        switch (fileType.toLowerCase()) {
+        String outcome = "error";
+        try {
+            long lastChunk = System.nanoTime();
+            while (true) {
+                if (System.nanoTime() - deadline > 0) {
+                    outcome = "timeout";
+                    throw new RuntimeException("Parsing " + filename + " took longer than " + maxDuration);
+                }
+                Chunk chunk = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (chunk != null) {
+                    consumer.accept(chunk.text(), chunk.position());
+                    lastChunk = System.nanoTime();
+                } else if (parse.isDone() && chunks.isEmpty()) {
+                    break;
+                } else if (System.nanoTime() - lastChunk > timeout.toNanos()) {
+                    outcome = "timeout";
+                    throw new RuntimeException("Parsing " + filename + " produced no text for " + timeout);
+                }
+            }
+            ParseResult result = parse.get();
+            outcome = result.truncated() ? "truncated" : "success";
+            return result;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } finally {
+            // Stops the parser (blocked on the queue or still parsing) if the consumer gave up
+            parse.cancel(true);
+            Timer.builder("km.parser.parse")
+                    .description("Document text extraction time")
+                    .tag("mime", mime)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ParseResult extract(Path path, String filename, boolean plainText, BlockingQueue<Chunk> chunks)
+            throws Exception {
+        long size = Files.size(path);
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(path))) {
+            ChunkingWriter text = new ChunkingWriter(new StreamingChunker(chunk -> {
+                try {
+                    chunks.put(new Chunk(chunk, size > 0 ? Math.min(1.0, (double) in.count / size) : 1.0));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ParseCancelledException();
+                }
+            }));
+            boolean truncated = false;
+            try {
+                if (plainText) {
+                    truncated = copyText(in, text);
+                } else {
+                    parser.parse(in, new InterruptibleHandler(new BodyContentHandler(
+                            new WriteOutContentHandler(text, maxChars))), new Metadata(), new ParseContext());
+                }
+            } catch (Exception e) {
+                if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                    throw e;
+                }
+                truncated = true;
+            }
+            if (truncated) {
+                log.warn("Document {} exceeds {} characters; indexing the beginning only", filename, maxChars);
+            }
+            text.close();
+            return new ParseResult(text.head.toString(), text.characters, truncated);
+        }
+    }
+
+    /**
+     * Copy UTF-8 text up to maxChars; returns true if the file was longer.
+     */
+    private boolean copyText(InputStream in, Writer out) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        char[] buffer = new char[8192];
+        long copied = 0;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ParseCancelledException();
+            }
+            int accepted = (int) Math.min(read, maxChars - copied);
+            out.write(buffer, 0, accepted);
+            copied += accepted;
+            if (accepted < read) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPlainText(String filename) {
+        String fileType = getFileType(filename).toLowerCase();
+        switch (fileType) {
+            case "md":
+            case "txt":
+                return true;
             case "pdf":
             case "doc":
             case "docx":
@@ -38,29 +271,13 @@ public class DocumentParserService {
             case "xlsx":
             case "ppt":
             case "pptx":
-                return parseTikaDocument(inputStream);
-            case "md":
-            case "txt":
-                return parseTextDocument(inputStream);
+                return false;
             default:
                 log.warn("Unsupported file type: {}", fileType);
-                return parseTikaDocument(inputStream); // Try with Tika anyway
+                return false; // Try with Tika anyway
         }
     }
 
-    private String parseTikaDocument(InputStream inputStream) throws Exception {
-        BodyContentHandler handler = new BodyContentHandler(-1); // No limit
-        Metadata metadata = new Metadata();
-        AutoDetectParser parser = new AutoDetectParser();
-
-        parser.parse(inputStream, handler, metadata);
-        return handler.toString();
-    }
-
-    private String parseTextDocument(InputStream inputStream) throws Exception {
-        return new String(inputStream.readAllBytes());
-    }
-
     private String getFileType(String filename) {
         if (filename == null || !filename.contains(".")) {
             return "";
@@ -68,12 +285,144 @@ public class DocumentParserService {
         return filename.substring(filename.lastIndexOf(".") + 1);
     }
 
-    public String detectMimeType(MultipartFile file) {
+    private static String mimeTag(String contentType) {
+        if (contentType == null) {
+            return "unknown";
+        }
+        int params = contentType.indexOf(';');
+        return (params >= 0 ? contentType.substring(0, params) : contentType).trim();
+    }
+
+    /**
+     * Detect the MIME type of a stored file from its name and leading bytes.
+     */
+    public String detectMimeType(Path path) {
         try {
-            return tika.detect(file.getInputStream());
+            return tika.detect(path);
         } catch (Exception e) {
             log.error("Error detecting MIME type", e);
             return "application/octet-stream";
         }
     }
+
+    /**
+     * Receives extracted chunks in document order, with the fraction of the file read so far.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(String chunk, double position) throws Exception;
+    }
+
+    /**
+     * Outcome of a parse: the leading text (for previews), total characters extracted and
+     * whether maxChars cut the document short.
+     */
+    public record ParseResult(String head, long characters, boolean truncated) {
+    }
+
+    private record Chunk(String text, double position) {
+    }
+
+    /**
+     * Writer end of the parse: feeds the chunker and keeps the first HEAD_CHARS characters.
+     */
+    private static class ChunkingWriter extends Writer {
+
+        private final StreamingChunker chunker;
+        private final StringBuilder head = new StringBuilder();
+        private long characters;
+
+        ChunkingWriter(StreamingChunker chunker) {
+            this.chunker = chunker;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            if (head.length() < HEAD_CHARS) {
+                head.append(cbuf, off, Math.min(len, HEAD_CHARS - head.length()));
+            }
+            characters += len;
+            chunker.append(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            chunker.finish();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static class ParseCancelledException extends RuntimeException {
+        ParseCancelledException() {
+            super("Parse cancelled");
+        }
+    }
+
+    /**
+     * Stops a parse at the next SAX event once its thread has been interrupted (timeout or a
+     * failed consumer); most parsers emit text steadily, so this ends them long before they
+     * finish on their own.
+     */
+    private static class InterruptibleHandler extends ContentHandlerDecorator {
+
+        InterruptibleHandler(org.xml.sax.ContentHandler handler) {
+            super(handler);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            checkInterrupted();
+            super.characters(ch, start, length);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, org.xml.sax.Attributes atts)
+                throws SAXException {
+            checkInterrupted();
+            super.startElement(uri, localName, name, atts);
+        }
+
+        private static void checkInterrupted() throws SAXException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new SAXException("Parse interrupted");
+            }
+        }
+    }
 }
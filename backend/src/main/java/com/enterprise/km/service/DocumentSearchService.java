@@ -0,0 +1,180 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.dto.DocumentDTO;
+import com.enterprise.km.dto.DocumentSearchResult;
+import com.enterprise.km.model.Document;
+import com.enterprise.km.repository.DocumentRepository;
+import com.enterprise.km.security.TenantContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ranked keyword search over the documents.search_vector GIN index with keyset paging.
+ *
+ * Every keyword token must match, and only the newest maxCandidates matching documents are
+ * ranked, so a very common term costs a bounded ts_rank pass instead of one over the table.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentSearchService {
+
+    private static final int SNIPPET_BEFORE = 40;
+    private static final int SNIPPET_LENGTH = 160;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final DocumentRepository documentRepository;
+
+    @Value("${app.search.max-candidates:5000}")
+    private int maxCandidates;
+
+    @Transactional(readOnly = true)
+    public DocumentSearchResult search(String keyword, String cursor, int size) {
+        String tenantId = TenantContext.getTenantId();
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        String query = CjkBigramTokenizer.toAllTsQuery(keyword);
+        if (query == null) {
+            return DocumentSearchResult.builder().content(List.of()).build();
+        }
+
+        Float cursorRank = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor decoded = decodeCursor(cursor);
+            cursorRank = decoded.rank();
+            cursorId = decoded.id();
+        }
+
+        // Fetch one extra row to know whether another page exists
+        List<DocumentRepository.SearchHit> hits = documentRepository.searchRanked(
+                tenantId, query, maxCandidates, cursorRank, cursorId, pageSize + 1);
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits = hits.subList(0, pageSize);
+        }
+
+        Map<Long, Document> documents = documentRepository.findAllById(
+                        hits.stream().map(DocumentRepository.SearchHit::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Document::getId, Function.identity()));
+
+        List<String> tokens = CjkBigramTokenizer.tokenize(keyword);
+        List<DocumentDTO> content = hits.stream()
+                .map(hit -> documents.get(hit.getId()))
+                .filter(Objects::nonNull)
+                .map(document -> {
+                    DocumentDTO dto = DocumentDTO.from(document);
+                    dto.setSnippet(snippet(document, tokens));
+                    return dto;
+                })
+                .toList();
+
+        String nextCursor = null;
+        if (hasMore) {
+            DocumentRepository.SearchHit last = hits.get(hits.size() - 1);
+            nextCursor = encodeCursor(last.getRank(), last.getId());
+        }
+
+        return DocumentSearchResult.builder()
+                .content(content)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Window around the first match with matched ranges wrapped in &lt;em&gt;; the rest is HTML-escaped.
+     */
+    private String snippet(Document document, List<String> tokens) {
+        String text = document.getContent() != null && !document.getContent().isBlank()
+                ? document.getContent()
+                : document.getTitle();
+        if (text == null) {
+            return null;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.length() != text.length()) {
+            lower = text; // case folding changed offsets, match case-sensitively
+        }
+
+        boolean[] matched = new boolean[text.length()];
+        int first = -1;
+        for (String token : tokens) {
+            int from = 0;
+            int idx;
+            while ((idx = lower.indexOf(token, from)) >= 0) {
+                for (int i = idx; i < idx + token.length(); i++) {
+                    matched[i] = true;
+                }
+                if (first < 0 || idx < first) {
+                    first = idx;
+                }
+                from = idx + 1;
+            }
+        }
+
+        int start = first < 0 ? 0 : Math.max(0, first - SNIPPET_BEFORE);
+        int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append("...");
+        }
+        boolean open = false;
+        for (int i = start; i < end; i++) {
+            if (matched[i] && !open) {
+                snippet.append("<em>");
+                open = true;
+            } else if (!matched[i] && open) {
+                snippet.append("</em>");
+                open = false;
+            }
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> snippet.append("&lt;");
+                case '>' -> snippet.append("&gt;");
+                case '&' -> snippet.append("&amp;");
+                case '\n', '\r' -> snippet.append(' ');
+                default -> snippet.append(c);
+            }
+        }
+        if (open) {
+            snippet.append("</em>");
+        }
+        if (end < text.length()) {
+            snippet.append("...");
+        }
+        return snippet.toString();
+    }
+
+    private String encodeCursor(Float rank, Long id) {
+        String raw = rank + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new Cursor(Float.parseFloat(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid search cursor", e);
+        }
+    }
+
+    private record Cursor(Float rank, Long id) {
+    }
+}
@@ -1,31 +1,62 @@
 package com.enterprise.km.service;
 
+import com.enterprise.km.dto.IngestionProgressDTO;
+import com.enterprise.km.model.BulkImport;
+import com.enterprise.km.model.Department;
 import com.enterprise.km.model.Document;
 import com.enterprise.km.model.DocumentChunk;
+import com.enterprise.km.model.DocumentVersion;
+import com.enterprise.km.model.Tenant;
+import com.enterprise.km.model.User;
+import com.enterprise.km.repository.BulkImportRepository;
+import com.enterprise.km.repository.DepartmentRepository;
 import com.enterprise.km.repository.DocumentChunkRepository;
 import com.enterprise.km.repository.DocumentRepository;
+import com.enterprise.km.repository.DocumentVersionRepository;
+import com.enterprise.km.repository.IngestionJobRepository;
 import com.enterprise.km.repository.TenantRepository;
 import com.enterprise.km.repository.UserRepository;
 import com.enterprise.km.security.TenantContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.document.DocumentReader;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.hibernate.Hibernate;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.IntConsumer;
 
 @Service
 @RequiredArgsConstructor
@@ -38,104 +69,646 @@ public class DocumentService {
     private final UserRepository userRepository;
     private final DocumentParserService parserService;
     private final VectorStore vectorStore;
+    private final TenantVectorIndexService tenantVectorIndexService;
+    private final SemanticAnswerCache answerCache;
+    private final IngestionJobQueue ingestionJobQueue;
+    private final IngestionJobRepository jobRepository;
+    private final DocumentChunkWriter chunkWriter;
+    private final DocumentVersionRepository versionRepository;
+    private final BulkImportRepository bulkImportRepository;
+    private final DepartmentRepository departmentRepository;
+    private final EmbeddingModel embeddingModel;
+    private final TransactionTemplate transactionTemplate;
     private final String uploadDir = "uploads/";
 
+    @Value("${app.ingestion.batch-size:64}")
+    private int ingestBatchSize;
+
+    private static final int PARSED_PROGRESS = 20;
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+    private static final int HASH_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Store the file and queue its ingestion; parsing, chunking and embedding happen in
+     * {@link IngestionWorker}. The document stays PENDING until a worker picks it up.
+     */
     @Transactional
     public Document uploadDocument(MultipartFile file, Long departmentId) {
+        String filePath = null;
         try {
             String tenantId = TenantContext.getTenantId();
             String username = SecurityContextHolder.getContext().getAuthentication().getName();
+            // Resolved before the file is written; the department must belong to the caller's tenant
+            Department department = departmentId != null
+                    ? departmentRepository.findByIdAndTenantTenantId(departmentId, tenantId)
+                            .orElseThrow(() -> new RuntimeException("Department not found"))
+                    : null;
+
+            // Stream file to disk once; hash and size come from the same pass
+            StoredFile stored = saveFile(file, tenantId);
+            filePath = stored.path().toString();
+
+            Document document = createDocument(stored, file.getOriginalFilename(),
+                    tenantRepository.findByTenantId(tenantId).orElseThrow(),
+                    userRepository.findByUsernameAndTenantTenantId(username, tenantId).orElseThrow(), department);
+
+            ingestionJobQueue.enqueue(document);
+            return document;
+
+        } catch (Exception e) {
+            log.error("Error uploading document", e);
+            deleteQuietly(filePath);
+            throw new RuntimeException("Failed to upload document", e);
+        }
+    }
 
-            // Parse document content
-            String content = parserService.parseDocument(file);
+    /**
+     * Store one file of a bulk import and queue it like a regular upload, tagged with the import.
+     */
+    @Transactional
+    public Document importFile(InputStream in, String fileName, Long importId) {
+        BulkImport bulkImport = bulkImportRepository.findById(importId)
+                .orElseThrow(() -> new RuntimeException("Import not found"));
+        String filePath = null;
+        try {
+            StoredFile stored = saveFile(in, fileName, bulkImport.getTenant().getTenantId());
+            filePath = stored.path().toString();
+            Document document = createDocument(stored, fileName, bulkImport.getTenant(), bulkImport.getUploadedBy(),
+                    null);
+            ingestionJobQueue.enqueue(document, bulkImport);
+            return document;
+        } catch (Exception e) {
+            deleteQuietly(filePath);
+            throw new RuntimeException("Failed to import " + fileName, e);
+        }
+    }
+
+    private Document createDocument(StoredFile stored, String fileName, Tenant tenant, User uploadedBy,
+                                    Department department) {
+        Document document = Document.builder()
+                .title(fileName)
+                .fileName(fileName)
+                .fileType(parserService.detectMimeType(stored.path()))
+                .fileSize(stored.size())
+                .filePath(stored.path().toString())
+                .contentHash(stored.sha256())
+                .tenant(tenant)
+                .department(department)
+                .uploadedBy(uploadedBy)
+                .status(Document.DocumentStatus.PENDING)
+                .searchTokens(CjkBigramTokenizer.toIndexText(fileName))
+                .build();
+        return documentRepository.save(document);
+    }
 
-            // Save file to disk
-            String filePath = saveFile(file, tenantId);
+    /**
+     * Parse, chunk, embed and index a stored document. Runs on an ingestion worker without a
+     * surrounding transaction; progress (0-100) is reported as work completes. Safe to re-run:
+     * chunks and vectors left by an earlier, interrupted attempt are removed first.
+     *
+     * @throws DocumentDeletedException if the document is deleted while it is being indexed
+     */
+    public IngestionReport ingest(Long documentId, IntConsumer progress) {
+        Document document = transactionTemplate.execute(status -> {
+            Document d = documentRepository.findById(documentId).orElse(null);
+            if (d == null) {
+                return null;
+            }
+            Hibernate.initialize(d.getTenant());
+            d.setStatus(Document.DocumentStatus.PROCESSING);
+            return documentRepository.save(d);
+        });
+        if (document == null) {
+            log.info("Document {} was deleted before ingestion", documentId);
+            return IngestionReport.EMPTY;
+        }
+        String tenantId = document.getTenant().getTenantId();
+
+        removeChunks(documentId);
+
+        // Parse, chunk and index in one pass
+        IndexedText indexed = indexChunks(document, progress);
+        tenantVectorIndexService.ensureTenantIndex(tenantId);
+
+        // Written to the locked row, never merged from the detached copy: a merge would
+        // re-insert a document deleted in the meantime
+        boolean applied = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            Document current = documentRepository.findByIdForUpdate(documentId).orElse(null);
+            if (current == null) {
+                return false;
+            }
+            current.setContent(indexed.head());
+            current.setSearchTokens(indexed.searchTokens());
+            current.setStatus(Document.DocumentStatus.COMPLETED);
+            return true;
+        }));
+        if (!applied) {
+            throw new DocumentDeletedException(documentId);
+        }
+        answerCache.invalidateTenant(tenantId);
+        log.info("Document {} ingested", documentId);
+        return indexed.report();
+    }
+
+    /**
+     * After a failed attempt: FAILED if the job gave up, otherwise back to PENDING for the retry.
+     */
+    public void markIngestionFailed(Long documentId, boolean permanent) {
+        transactionTemplate.executeWithoutResult(status -> documentRepository.findByIdForUpdate(documentId)
+                .ifPresent(document -> document.setStatus(
+                        permanent ? Document.DocumentStatus.FAILED : Document.DocumentStatus.PENDING)));
+    }
+
+    public IngestionProgressDTO getIngestionProgress(Long documentId) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new RuntimeException("Document not found"));
+        if (!document.getTenant().getTenantId().equals(TenantContext.getTenantId())) {
+            throw new RuntimeException("Access denied");
+        }
+
+        IngestionProgressDTO.IngestionProgressDTOBuilder progress = IngestionProgressDTO.builder()
+                .documentId(documentId)
+                .documentStatus(document.getStatus().name())
+                .updatedAt(document.getUpdatedAt());
+        jobRepository.findFirstByDocumentIdOrderByIdDesc(documentId).ifPresent(job -> progress
+                .jobStatus(job.getStatus().name())
+                .progress(job.getProgress())
+                .attempts(job.getAttempts())
+                .lastError(job.getLastError())
+                .chunkCount(job.getChunkCount())
+                .embeddingsReused(job.getEmbeddingsReused())
+                .dedupRatio(job.getChunkCount() != null && job.getChunkCount() > 0 && job.getEmbeddingsReused() != null
+                        ? (double) job.getEmbeddingsReused() / job.getChunkCount() : null)
+                .updatedAt(job.getUpdatedAt()));
+        return progress.build();
+    }
 
-            // Create document entity
-            Document document = Document.builder()
-                    .title(file.getOriginalFilename())
-                    .content(content)
+    /**
+     * Store a new revision of an indexed document and queue it; the current version stays
+     * searchable until the worker swaps the new one in. Returns empty when the file is
+     * byte-identical to the current version.
+     */
+    @Transactional
+    public Optional<DocumentVersion> uploadNewVersion(Long documentId, MultipartFile file) {
+        // Locked so concurrent uploads get distinct version numbers
+        Document document = documentRepository.findByIdForUpdate(documentId)
+                .orElseThrow(() -> new RuntimeException("Document not found"));
+        String tenantId = TenantContext.getTenantId();
+        if (!document.getTenant().getTenantId().equals(tenantId)) {
+            throw new RuntimeException("Access denied");
+        }
+        if (document.getStatus() == Document.DocumentStatus.PENDING
+                || document.getStatus() == Document.DocumentStatus.PROCESSING) {
+            throw new RuntimeException("Document is still being processed");
+        }
+
+        String filePath = null;
+        try {
+            StoredFile stored = saveFile(file, tenantId);
+            filePath = stored.path().toString();
+            if (stored.sha256().equals(document.getContentHash())) {
+                deleteQuietly(filePath);
+                return Optional.empty();
+            }
+
+            Integer latest = versionRepository.findMaxVersionNumber(documentId);
+            int current = document.getVersion() != null ? document.getVersion() : 1;
+            DocumentVersion version = DocumentVersion.builder()
+                    .document(document)
+                    .versionNumber(Math.max(current, latest != null ? latest : 0) + 1)
                     .fileName(file.getOriginalFilename())
-                    .fileType(parserService.detectMimeType(file))
-                    .fileSize(file.getSize())
+                    .fileType(parserService.detectMimeType(stored.path()))
+                    .fileSize(stored.size())
                     .filePath(filePath)
-                    .tenant(tenantRepository.findByTenantId(tenantId).orElseThrow())
-                    .uploadedBy(userRepository.findByUsernameAndTenantTenantId(username, tenantId).orElseThrow())
-                    .status(Document.DocumentStatus.PROCESSING)
+                    .contentHash(stored.sha256())
                     .build();
+            version = versionRepository.save(version);
+            ingestionJobQueue.enqueue(version);
+            return Optional.of(version);
+
+        } catch (Exception e) {
+            log.error("Error uploading new version of document {}", documentId, e);
+            deleteQuietly(filePath);
+            throw new RuntimeException("Failed to upload document version", e);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<DocumentVersion> listVersions(Long documentId) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new RuntimeException("Document not found"));
+        if (!document.getTenant().getTenantId().equals(TenantContext.getTenantId())) {
+            throw new RuntimeException("Access denied");
+        }
+        return versionRepository.findByDocumentIdOrderByVersionNumberDesc(documentId);
+    }
 
-            if (departmentId != null) {
-                // Set department if provided
+    /**
+     * Apply a re-uploaded version by diffing its chunks against the indexed ones on
+     * (content hash, chunkIndex): matching chunks are kept, only new ones are embedded and
+     * inserted, and only vanished ones are deleted.
+     *
+     * Embeddings for the new chunks are computed first, outside any transaction, and land in
+     * the content-hash store. The swap itself (chunk rows, vectors, document fields) then runs
+     * in one transaction holding the document row lock, reusing those embeddings, so queries
+     * see either the old version or the new one in full.
+     */
+    public IngestionReport ingestVersion(Long versionId, IntConsumer progress) {
+        DocumentVersion version = transactionTemplate.execute(status -> {
+            DocumentVersion v = versionRepository.findById(versionId).orElse(null);
+            if (v == null || v.getStatus() != DocumentVersion.VersionStatus.PENDING) {
+                return null;
             }
+            Hibernate.initialize(v.getDocument());
+            return v;
+        });
+        if (version == null) {
+            log.info("Document version {} is gone or already applied", versionId);
+            return IngestionReport.EMPTY;
+        }
+        Long documentId = version.getDocument().getId();
+
+        // The diff needs the whole chunk list; the text itself is never held in one piece
+        List<String> chunks = new ArrayList<>();
+        Set<String> tokens = new LinkedHashSet<>(CjkBigramTokenizer.tokenize(version.getFileName()));
+        DocumentParserService.ParseResult parsed = parserService.parseChunks(
+                Paths.get(version.getFilePath()), version.getFileName(), (chunk, position) -> {
+                    chunks.add(chunk);
+                    tokens.addAll(CjkBigramTokenizer.tokenize(chunk));
+                    if (chunks.size() % ingestBatchSize == 0) {
+                        progress.accept((int) (PARSED_PROGRESS * position));
+                    }
+                });
+        progress.accept(PARSED_PROGRESS);
+        String searchTokens = String.join(" ", tokens);
+
+        Set<ChunkKey> indexed = new HashSet<>();
+        chunkRepository.findByDocumentId(documentId).forEach(chunk -> indexed.add(ChunkKey.of(chunk)));
+        List<String> pending = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            if (!indexed.contains(new ChunkKey(ContentHash.of(chunks.get(i)), i))) {
+                pending.add(chunks.get(i));
+            }
+        }
 
-            document = documentRepository.save(document);
+        int computed;
+        try (DeduplicatingEmbeddingModel.Usage usage = DeduplicatingEmbeddingModel.track()) {
+            for (int from = 0; from < pending.size(); from += ingestBatchSize) {
+                int to = Math.min(from + ingestBatchSize, pending.size());
+                embeddingModel.embed(pending.subList(from, to));
+                progress.accept(PARSED_PROGRESS + (99 - PARSED_PROGRESS) * to / pending.size());
+            }
+            computed = usage.texts() - usage.reused();
+        }
 
-            // Process and create chunks
-            processDocumentChunks(document, content);
+        VersionSwap swap = transactionTemplate.execute(
+                status -> swapVersion(versionId, parsed.head(), searchTokens, chunks));
+        if (swap == null) {
+            return IngestionReport.EMPTY;
+        }
+        deleteQuietly(swap.obsoleteFilePath());
+        if (!swap.applied()) {
+            log.info("Document version {} was superseded by a later upload", versionId);
+            return IngestionReport.EMPTY;
+        }
+        tenantVectorIndexService.ensureTenantIndex(swap.tenantId());
+        answerCache.invalidateTenant(swap.tenantId());
+        log.info("Document {} now at version {}: {} chunks kept, {} added, {} removed, {} embeddings computed",
+                documentId, version.getVersionNumber(), swap.kept(), swap.added(), swap.removed(), computed);
+        return new IngestionReport(chunks.size(), chunks.size() - computed);
+    }
 
-            document.setStatus(Document.DocumentStatus.COMPLETED);
-            return documentRepository.save(document);
+    private VersionSwap swapVersion(Long versionId, String head, String searchTokens, List<String> chunks) {
+        DocumentVersion version = versionRepository.findById(versionId).orElse(null);
+        if (version == null) {
+            return null;
+        }
+        Document document = documentRepository.findByIdForUpdate(version.getDocument().getId()).orElse(null);
+        if (document == null) {
+            return null;
+        }
+        int current = document.getVersion() != null ? document.getVersion() : 1;
+        if (version.getVersionNumber() <= current) {
+            // A later upload was applied first
+            String obsolete = version.getFilePath();
+            version.setStatus(DocumentVersion.VersionStatus.SUPERSEDED);
+            version.setFilePath(null);
+            return new VersionSwap(false, document.getTenant().getTenantId(), obsolete, 0, 0, 0);
+        }
 
-        } catch (Exception e) {
-            log.error("Error uploading document", e);
-            throw new RuntimeException("Failed to upload document", e);
+        // Re-read under the lock: the index may have changed since the diff was estimated
+        Map<ChunkKey, DocumentChunk> existing = new HashMap<>();
+        List<DocumentChunk> removed = new ArrayList<>();
+        for (DocumentChunk chunk : chunkRepository.findByDocumentId(document.getId())) {
+            if (existing.putIfAbsent(ChunkKey.of(chunk), chunk) != null) {
+                removed.add(chunk);
+            }
+        }
+        List<DocumentChunk> added = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            String text = chunks.get(i);
+            if (existing.remove(new ChunkKey(ContentHash.of(text), i)) == null) {
+                added.add(buildChunk(document, text, i));
+            }
+        }
+        removed.addAll(existing.values());
+        int kept = chunks.size() - added.size();
+
+        List<String> removedVectorIds = removed.stream().map(DocumentChunk::getVectorId).filter(Objects::nonNull)
+                .toList();
+        if (!removedVectorIds.isEmpty()) {
+            vectorStore.delete(removedVectorIds);
+        }
+        chunkRepository.deleteAllByIdInBatch(removed.stream().map(DocumentChunk::getId).toList());
+        for (int from = 0; from < added.size(); from += ingestBatchSize) {
+            List<DocumentChunk> batch = added.subList(from, Math.min(from + ingestBatchSize, added.size()));
+            chunkWriter.insert(document.getId(), batch);
+            vectorStore.add(batch.stream().map(chunk -> toVector(document, chunk)).toList());
+        }
+
+        String previousFilePath = document.getFilePath();
+        document.setFileName(version.getFileName());
+        document.setFileType(version.getFileType());
+        document.setFileSize(version.getFileSize());
+        document.setFilePath(version.getFilePath());
+        document.setContentHash(version.getContentHash());
+        document.setContent(head);
+        document.setSearchTokens(searchTokens);
+        document.setVersion(version.getVersionNumber());
+        document.setStatus(Document.DocumentStatus.COMPLETED);
+
+        versionRepository.findByDocumentIdAndStatus(document.getId(), DocumentVersion.VersionStatus.CURRENT)
+                .forEach(previous -> {
+                    previous.setStatus(DocumentVersion.VersionStatus.SUPERSEDED);
+                    previous.setFilePath(null);
+                });
+        version.setStatus(DocumentVersion.VersionStatus.CURRENT);
+        version.setChunksKept(kept);
+        version.setChunksAdded(added.size());
+        version.setChunksRemoved(removed.size());
+        return new VersionSwap(true, document.getTenant().getTenantId(), previousFilePath, kept, added.size(),
+                removed.size());
+    }
+
+    /**
+     * After a failed version job; the document keeps serving its current version.
+     */
+    public void markVersionFailed(Long versionId, boolean permanent) {
+        if (!permanent) {
+            return;
+        }
+        versionRepository.findById(versionId).ifPresent(version -> {
+            version.setStatus(DocumentVersion.VersionStatus.FAILED);
+            versionRepository.save(version);
+        });
+    }
+
+    /**
+     * Index chunks as the parser emits them: each batch becomes one multi-row INSERT and one
+     * vector store add (chunk rows and tenant-tagged vectors share vectorId). A slow batch
+     * stalls the parser rather than letting parsed text pile up.
+     */
+    private IndexedText indexChunks(Document document, IntConsumer progress) {
+        long started = System.nanoTime();
+        List<DocumentChunk> rows = new ArrayList<>(ingestBatchSize);
+        List<org.springframework.ai.document.Document> vectors = new ArrayList<>(ingestBatchSize);
+        Set<String> tokens = new LinkedHashSet<>(CjkBigramTokenizer.tokenize(document.getFileName()));
+        int[] count = {0};
+        DocumentParserService.ParseResult parsed;
+        IngestionReport report;
+        try (DeduplicatingEmbeddingModel.Usage usage = DeduplicatingEmbeddingModel.track()) {
+            parsed = parserService.parseChunks(Paths.get(document.getFilePath()), document.getFileName(),
+                    (text, position) -> {
+                        DocumentChunk chunk = buildChunk(document, text, count[0]++);
+                        rows.add(chunk);
+                        vectors.add(toVector(document, chunk));
+                        tokens.addAll(CjkBigramTokenizer.tokenize(text));
+                        if (rows.size() == ingestBatchSize) {
+                            writeBatch(document, rows, vectors);
+                            progress.accept((int) (99 * position));
+                        }
+                    });
+            writeBatch(document, rows, vectors);
+            report = new IngestionReport(count[0], usage.reused());
         }
+        double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-3);
+        log.info("Document {}: {} chars, {} chunks indexed in {}s ({} chunks/s), {} embeddings reused ({}%)",
+                document.getId(), parsed.characters(), count[0], String.format("%.2f", seconds),
+                String.format("%.1f", count[0] / seconds), report.embeddingsReused(),
+                String.format("%.0f", report.dedupRatio() * 100));
+        return new IndexedText(parsed.head(), String.join(" ", tokens), report);
     }
 
-    private void processDocumentChunks(Document document, String content) {
-        // Split document into chunks
-        TokenTextSplitter splitter = new TokenTextSplitter(500, 100, 5, 1000, true);
+    /**
+     * A batch written after deleteDocument has run either fails the chunk foreign key or adds
+     * vectors the delete never saw; those are removed again here and indexing stops.
+     */
+    private void writeBatch(Document document, List<DocumentChunk> rows,
+                            List<org.springframework.ai.document.Document> vectors) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            chunkWriter.insert(document.getId(), rows);
+        } catch (DataIntegrityViolationException e) {
+            if (!documentRepository.existsById(document.getId())) {
+                throw new DocumentDeletedException(document.getId());
+            }
+            throw e;
+        }
+        vectorStore.add(vectors);
+        if (!documentRepository.existsById(document.getId())) {
+            vectorStore.delete(vectors.stream().map(org.springframework.ai.document.Document::getId).toList());
+            throw new DocumentDeletedException(document.getId());
+        }
+        rows.clear();
+        vectors.clear();
+    }
 
-        List<org.springframework.ai.document.Document> aiDocuments = List.of(
-            new org.springframework.ai.document.Document(content)
-        );
+    /**
+     * Remove a document's chunks and their vectors.
+     */
+    private void removeChunks(Long documentId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<String> vectorIds = chunkRepository.findByDocumentId(documentId).stream()
+                    .map(DocumentChunk::getVectorId)
+                    .filter(Objects::nonNull)
+                    .toList();
+            if (!vectorIds.isEmpty()) {
+                vectorStore.delete(vectorIds);
+            }
+            chunkRepository.deleteByDocumentId(documentId);
+        });
+    }
 
-        List<org.springframework.ai.document.Document> chunks = splitter.apply(aiDocuments);
+    private static DocumentChunk buildChunk(Document document, String content, int chunkIndex) {
+        return DocumentChunk.builder()
+                .document(document)
+                .content(content)
+                .chunkIndex(chunkIndex)
+                .chunkSize(content.length())
+                .contentHash(ContentHash.of(content))
+                .searchTokens(CjkBigramTokenizer.toIndexText(content))
+                .vectorId(UUID.randomUUID().toString())
+                .build();
+    }
 
-        // Save chunks to database and vector store
-        for (int i = 0; i < chunks.size(); i++) {
-            org.springframework.ai.document.Document chunk = chunks.get(i);
+    private org.springframework.ai.document.Document toVector(Document document, DocumentChunk chunk) {
+        return new org.springframework.ai.document.Document(
+                chunk.getVectorId(), chunk.getContent(), vectorMetadata(document, chunk.getChunkIndex()));
+    }
 
-            DocumentChunk documentChunk = DocumentChunk.builder()
-                    .document(document)
-                    .content(chunk.getContent())
-                    .chunkIndex(i)
-                    .chunkSize(chunk.getContent().length())
-                    .vectorId(UUID.randomUUID().toString())
-                    .build();
+    private Map<String, Object> vectorMetadata(Document document, int chunkIndex) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(VectorMetadata.TENANT_ID, document.getTenant().getTenantId());
+        metadata.put(VectorMetadata.DOCUMENT_ID, document.getId());
+        metadata.put(VectorMetadata.CHUNK_INDEX, chunkIndex);
+        if (document.getDepartment() != null) {
+            metadata.put(VectorMetadata.DEPARTMENT_ID, document.getDepartment().getId());
+        }
+        return metadata;
+    }
+
+    /**
+     * Cached answers are dropped once the corpus change is visible to other transactions.
+     */
+    private void invalidateAnswerCacheAfterCommit(String tenantId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            answerCache.invalidateTenant(tenantId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                answerCache.invalidateTenant(tenantId);
+            }
+        });
+    }
 
-            chunkRepository.save(documentChunk);
+    private void deleteQuietly(String filePath) {
+        if (filePath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(filePath));
+        } catch (IOException e) {
+            log.warn("Failed to delete file {}: {}", filePath, e.getMessage());
         }
+    }
 
-        // Add to vector store
-        vectorStore.add(chunks);
+    /**
+     * Hand the upload to the servlet container, which moves the part it already spooled to disk
+     * into place (a rename when both sit on one filesystem) instead of copying it, then hash the
+     * stored file in a second, sequential read. Heap use is one buffer regardless of file size.
+     */
+    private StoredFile saveFile(MultipartFile file, String tenantId) throws IOException {
+        Path filePath = newFilePath(file.getOriginalFilename(), tenantId);
+        try {
+            // transferTo(File) goes through Part.write; the Path overload always stream-copies
+            file.transferTo(filePath.toAbsolutePath().toFile());
+            return new StoredFile(filePath, sha256(filePath), Files.size(filePath));
+        } catch (IOException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
     }
 
-    private String saveFile(MultipartFile file, String tenantId) throws IOException {
+    /**
+     * Copy a stream (bulk-import entry) to its final location through NIO channels while hashing it.
+     */
+    private StoredFile saveFile(InputStream source, String originalName, String tenantId) throws IOException {
+        Path filePath = newFilePath(originalName, tenantId);
+
+        MessageDigest digest = ContentHash.newDigest();
+        long size = 0;
+        try (ReadableByteChannel in = Channels.newChannel(new DigestInputStream(source, digest));
+             FileChannel out = FileChannel.open(filePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long transferred;
+            while ((transferred = out.transferFrom(in, size, TRANSFER_CHUNK_BYTES)) > 0) {
+                size += transferred;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+        return new StoredFile(filePath, ContentHash.hex(digest), size);
+    }
+
+    private Path newFilePath(String originalName, String tenantId) throws IOException {
         Path tenantDir = Paths.get(uploadDir, tenantId);
         Files.createDirectories(tenantDir);
 
-        String filename = UUID.randomUUID() + "_" + file.getOriginalFilename();
-        Path filePath = tenantDir.resolve(filename);
+        // Keep only the last path segment so names like "../x" cannot leave the tenant directory
+        Path name = Paths.get(String.valueOf(originalName)).getFileName();
+        return tenantDir.resolve(UUID.randomUUID() + "_" + (name != null ? name : "file"));
+    }
 
-        Files.write(filePath, file.getBytes());
-        return filePath.toString();
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_BYTES);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return ContentHash.hex(digest);
     }
 
-    public Page<Document> listDocuments(Pageable pageable) {
-        String tenantId = TenantContext.getTenantId();
-        return documentRepository.findByTenantTenantIdAndDeletedFalse(tenantId, pageable);
+    private record StoredFile(Path path, String sha256, long size) {
+    }
+
+    private record ChunkKey(String contentHash, int chunkIndex) {
+
+        static ChunkKey of(DocumentChunk chunk) {
+            // Rows indexed before chunk hashing was added carry no hash
+            String hash = chunk.getContentHash() != null ? chunk.getContentHash() : ContentHash.of(chunk.getContent());
+            return new ChunkKey(hash, chunk.getChunkIndex());
+        }
+    }
+
+    /**
+     * What a fresh ingestion leaves on the document: the text preview and document-level
+     * search tokens (the union of its chunks' tokens).
+     */
+    private record IndexedText(String head, String searchTokens, IngestionReport report) {
+    }
+
+    /**
+     * Result of the swap transaction; obsoleteFilePath is deleted once it has committed.
+     */
+    private record VersionSwap(boolean applied, String tenantId, String obsoleteFilePath, int kept, int added,
+                               int removed) {
     }
 
-    public Page<Document> searchDocuments(String keyword, Pageable pageable) {
+    /**
+     * Outcome of one ingestion: chunks indexed and how many of their embeddings were reused
+     * from earlier uploads instead of being computed by the embedding model.
+     */
+    public record IngestionReport(int chunks, int embeddingsReused) {
+
+        static final IngestionReport EMPTY = new IngestionReport(0, 0);
+
+        public double dedupRatio() {
+            return chunks == 0 ? 0 : (double) embeddingsReused / chunks;
+        }
+    }
+
+    public Page<Document> listDocuments(Pageable pageable) {
         String tenantId = TenantContext.getTenantId();
-        return documentRepository.searchDocuments(tenantId, keyword, pageable);
+        return documentRepository.findByTenantTenantIdAndDeletedFalse(tenantId, pageable);
     }
 
+    /**
+     * Delete a document with its chunks, vectors, versions and files. An ingestion in progress
+     * is cancelled: the row lock orders the delete against the worker's final write, removing
+     * the job makes the worker's next heartbeat fail, and batches it writes afterwards are
+     * rolled back by the worker itself (see writeBatch).
+     */
     @Transactional
     public void deleteDocument(Long documentId) {
-        Document document = documentRepository.findById(documentId)
+        Document document = documentRepository.findByIdForUpdate(documentId)
                 .orElseThrow(() -> new RuntimeException("Document not found"));
 
         String tenantId = TenantContext.getTenantId();
@@ -152,8 +725,14 @@ public class DocumentService {
 
         vectorStore.delete(vectorIds);
 
-        // 3. Delete all chunks from database
+        // 3. Delete all chunks and ingestion jobs (cancelling a running one) from database
         chunkRepository.deleteByDocumentId(documentId);
+        jobRepository.deleteByDocumentId(documentId);
+        versionRepository.findByDocumentIdOrderByVersionNumberDesc(documentId).stream()
+                .map(DocumentVersion::getFilePath)
+                .filter(path -> path != null && !path.equals(document.getFilePath()))
+                .forEach(this::deleteQuietly);
+        versionRepository.deleteByDocumentId(documentId);
 
         // 4. Delete physical file
         if (document.getFilePath() != null) {
@@ -168,6 +747,7 @@ public class DocumentService {
 
         // 5. delete document
         documentRepository.deleteById(documentId);
+        invalidateAnswerCacheAfterCommit(tenantId);
 
         log.info("Document {} deleted successfully - Vectors: {}, Chunks: {}, Physical file deleted",
             documentId, vectorIds.size(), chunks.size());
@@ -0,0 +1,89 @@
+package com.enterprise.km.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for identical concurrent generations.
+ *
+ * The first request for a key (the leader) runs the generation; requests arriving while it
+ * is in flight (followers) share its result instead of starting their own. Streaming
+ * followers get the leader's Flux with already emitted tokens replayed. An entry is dropped
+ * when its generation terminates, so later requests start fresh.
+ */
+@Component
+public class GenerationCoalescer {
+
+    private final Map<String, Flux<String>> streams = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> calls = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter followers;
+
+    public GenerationCoalescer(MeterRegistry meterRegistry) {
+        this.leaders = meterRegistry.counter("km.chat.coalesced", "role", "leader");
+        this.followers = meterRegistry.counter("km.chat.coalesced", "role", "follower");
+        meterRegistry.gauge("km.chat.coalesced.inflight", this, c -> c.streams.size() + c.calls.size());
+    }
+
+    /**
+     * Join or lead the stream for key. generation is only subscribed if this caller leads;
+     * onFollow runs when it does not (e.g. to give back a generation slot it will not use).
+     */
+    public Flux<String> stream(String key, Flux<String> generation, Runnable onFollow) {
+        Flux<String> existing = streams.get(key);
+        if (existing == null) {
+            AtomicReference<Flux<String>> self = new AtomicReference<>();
+            // cache() keeps the generation running for the remaining subscribers when one cancels
+            Flux<String> shared = generation
+                    .doFinally(signal -> streams.remove(key, self.get()))
+                    .cache();
+            self.set(shared);
+            existing = streams.putIfAbsent(key, shared);
+            if (existing == null) {
+                leaders.increment();
+                return shared;
+            }
+        }
+        followers.increment();
+        onFollow.run();
+        return existing;
+    }
+
+    /**
+     * Blocking counterpart of {@link #stream}: followers wait for the leader's answer.
+     */
+    public String call(String key, Supplier<String> generation) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = calls.putIfAbsent(key, future);
+        if (existing != null) {
+            followers.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+            }
+        }
+
+        leaders.increment();
+        try {
+            String answer = generation.get();
+            future.complete(answer);
+            return answer;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+}
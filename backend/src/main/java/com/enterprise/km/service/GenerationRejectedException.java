@@ -0,0 +1,11 @@
+package com.enterprise.km.service;
+
+/**
+ * Thrown when the LLM generation queue cannot take or keep a request; mapped to HTTP 429.
+ */
+public class GenerationRejectedException extends RuntimeException {
+
+    public GenerationRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,301 @@
+package com.enterprise.km.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for LLM generations.
+ *
+ * At most maxConcurrent generations run against Ollama at once. Requests beyond that wait
+ * in per-tenant FIFO queues served by stride scheduling: each dispatch advances the tenant's
+ * pass by 1 / weight and the non-empty queue with the lowest pass goes next, so a burst
+ * from one tenant cannot starve the others. Waits are bounded by maxWait and the per-tenant
+ * queue length by maxQueuePerTenant; both rejections surface as {@link GenerationRejectedException}.
+ * Background generations (summaries) queue apart from their tenant's chat requests at
+ * backgroundWeight, so they take a smaller share of the slots whenever there is contention.
+ */
+@Component
+@Slf4j
+public class GenerationScheduler {
+
+    private static final String BACKGROUND_SUFFIX = "#background";
+
+    private final int maxConcurrent;
+    private final int maxQueuePerTenant;
+    private final Duration maxWait;
+    private final Map<String, Double> tenantWeights;
+    private final double backgroundWeight;
+
+    private final Map<String, TenantQueue> queues = new LinkedHashMap<>();
+    private int active;
+    private int queued;
+    private double virtualTime;
+
+    private final Timer waitTimer;
+    private final Counter rejectedFull;
+    private final Counter rejectedTimeout;
+
+    public GenerationScheduler(@Value("${app.llm.scheduler.max-concurrent:4}") int maxConcurrent,
+                               @Value("${app.llm.scheduler.max-queue-per-tenant:20}") int maxQueuePerTenant,
+                               @Value("${app.llm.scheduler.max-wait:PT30S}") Duration maxWait,
+                               @Value("${app.llm.scheduler.tenant-weights:}") String tenantWeights,
+                               @Value("${app.llm.scheduler.background-weight:0.25}") double backgroundWeight,
+                               MeterRegistry meterRegistry) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueuePerTenant = maxQueuePerTenant;
+        this.maxWait = maxWait;
+        this.tenantWeights = parseWeights(tenantWeights);
+        this.backgroundWeight = backgroundWeight;
+
+        this.waitTimer = Timer.builder("km.llm.queue.wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.rejectedFull = meterRegistry.counter("km.llm.rejected", "reason", "queue_full");
+        this.rejectedTimeout = meterRegistry.counter("km.llm.rejected", "reason", "timeout");
+        meterRegistry.gauge("km.llm.queue.depth", this, s -> s.queueDepth());
+        meterRegistry.gauge("km.llm.active", this, s -> s.activeCount());
+    }
+
+    /**
+     * Request a generation slot for the tenant. The returned admission is either granted
+     * immediately (position 0) or queued; it must always be released.
+     *
+     * @throws GenerationRejectedException if the tenant's queue is full
+     */
+    public Admission admit(String tenantId) {
+        String key = tenantId != null ? tenantId : "";
+        return admit(key, weight(key));
+    }
+
+    private Admission admit(String key, double weight) {
+        Waiter waiter = new Waiter(key, System.nanoTime());
+        int position;
+        synchronized (this) {
+            if (active < maxConcurrent && queued == 0) {
+                active++;
+                waiter.granted = true;
+                waiter.permit.complete(null);
+                waitTimer.record(0, TimeUnit.NANOSECONDS);
+                return new Admission(this, waiter, 0);
+            }
+            TenantQueue queue = queues.computeIfAbsent(key, k -> new TenantQueue(weight));
+            if (queue.waiters.size() >= maxQueuePerTenant) {
+                rejectedFull.increment();
+                throw new GenerationRejectedException("当前请求过多，请稍后再试");
+            }
+            if (queue.waiters.isEmpty()) {
+                // A tenant returning from idle starts at the current virtual time, not with banked credit
+                queue.pass = Math.max(queue.pass, virtualTime);
+            }
+            queue.waiters.add(waiter);
+            queued++;
+            position = queued;
+        }
+
+        CompletableFuture.runAsync(() -> expire(waiter),
+                CompletableFuture.delayedExecutor(maxWait.toMillis(), TimeUnit.MILLISECONDS));
+        return new Admission(this, waiter, position);
+    }
+
+    /**
+     * Run a blocking generation once a slot is granted.
+     */
+    public <T> T run(String tenantId, Supplier<T> generation) {
+        return run(admit(tenantId), generation);
+    }
+
+    /**
+     * Run a blocking background generation for the tenant once a slot is granted; it waits in
+     * the tenant's background queue at the tenant weight times backgroundWeight.
+     */
+    public <T> T runBackground(String tenantId, Supplier<T> generation) {
+        String key = tenantId != null ? tenantId : "";
+        return run(admit(key + BACKGROUND_SUFFIX, weight(key) * backgroundWeight), generation);
+    }
+
+    private <T> T run(Admission admission, Supplier<T> generation) {
+        try {
+            admission.await();
+            return generation.get();
+        } finally {
+            admission.release();
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            TenantQueue queue = queues.get(waiter.tenantId);
+            if (queue == null || !queue.waiters.remove(waiter)) {
+                return;
+            }
+            queued--;
+        }
+        rejectedTimeout.increment();
+        waiter.permit.completeExceptionally(new GenerationRejectedException("排队等待超时，请稍后再试"));
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            TenantQueue queue = queues.get(waiter.tenantId);
+            if (queue != null && queue.waiters.remove(waiter)) {
+                queued--;
+                return;
+            }
+        }
+        // Not queued any more: either granted (free the slot) or already expired
+        if (waiter.granted) {
+            releaseSlot();
+        }
+    }
+
+    private void releaseSlot() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            active--;
+            while (active < maxConcurrent && queued > 0) {
+                TenantQueue next = null;
+                for (TenantQueue queue : queues.values()) {
+                    if (!queue.waiters.isEmpty() && (next == null || queue.pass < next.pass)) {
+                        next = queue;
+                    }
+                }
+                virtualTime = next.pass;
+                next.pass += 1.0 / next.weight;
+                Waiter waiter = next.waiters.poll();
+                waiter.granted = true;
+                granted.add(waiter);
+                queued--;
+                active++;
+            }
+            queues.values().removeIf(q -> q.waiters.isEmpty() && q.pass <= virtualTime);
+        }
+        long now = System.nanoTime();
+        for (Waiter waiter : granted) {
+            waitTimer.record(now - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+            waiter.permit.complete(null);
+        }
+    }
+
+    private synchronized int queueDepth() {
+        return queued;
+    }
+
+    private synchronized int activeCount() {
+        return active;
+    }
+
+    private double weight(String tenantId) {
+        return tenantWeights.getOrDefault(tenantId, 1.0);
+    }
+
+    /**
+     * "tenantA=2,tenantB=0.5"; unlisted tenants weigh 1.
+     */
+    private static Map<String, Double> parseWeights(String spec) {
+        Map<String, Double> weights = new HashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return weights;
+        }
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                log.warn("Ignoring malformed tenant weight: {}", entry);
+                continue;
+            }
+            double weight = Double.parseDouble(parts[1].trim());
+            if (weight > 0) {
+                weights.put(parts[0].trim(), weight);
+            }
+        }
+        return weights;
+    }
+
+    private static class TenantQueue {
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        final double weight;
+        double pass;
+
+        TenantQueue(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static class Waiter {
+        final String tenantId;
+        final long enqueuedAt;
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        volatile boolean granted; // set under the scheduler lock; permit is completed outside it
+
+        Waiter(String tenantId, long enqueuedAt) {
+            this.tenantId = tenantId;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * A granted or queued generation slot. position is 0 when granted immediately, otherwise
+     * the number of requests queued ahead of and including this one at admission time.
+     */
+    public static class Admission {
+
+        private final GenerationScheduler scheduler;
+        private final Waiter waiter;
+        private final int position;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission(GenerationScheduler scheduler, Waiter waiter, int position) {
+            this.scheduler = scheduler;
+            this.waiter = waiter;
+            this.position = position;
+        }
+
+        public int position() {
+            return position;
+        }
+
+        /**
+         * Completes when the slot is granted, or exceptionally with GenerationRejectedException on timeout.
+         */
+        public CompletableFuture<Void> granted() {
+            return waiter.permit;
+        }
+
+        public void await() {
+            try {
+                waiter.permit.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release();
+                throw new GenerationRejectedException("排队等待被中断");
+            } catch (ExecutionException e) {
+                throw (RuntimeException) e.getCause();
+            }
+        }
+
+        /**
+         * Give the slot back, or leave the queue if not yet granted. Idempotent.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                scheduler.cancel(waiter);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.BulkImport;
+import com.enterprise.km.model.Document;
+import com.enterprise.km.model.DocumentVersion;
+import com.enterprise.km.model.IngestionJob;
+import com.enterprise.km.repository.IngestionJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * PostgreSQL-backed ingestion queue shared by all nodes.
+ *
+ * Jobs are claimed one at a time with FOR UPDATE SKIP LOCKED, so concurrent workers never
+ * block on or double-claim a row. A claim sets a visibility timeout (lockedUntil) that the
+ * worker extends with each progress report; a job whose lease lapses (crashed node) becomes
+ * claimable again. Interactive uploads and bulk-import files are capped per tenant separately
+ * (maxPerTenant and bulkMaxPerTenant running jobs), so a running import never takes the slots
+ * of a user's upload; interactive uploads are also claimed ahead of bulk-import files.
+ *
+ * The per-tenant limits are counted, not locked, so claims are serialized cluster-wide by a
+ * transaction-scoped advisory lock taken before the count; otherwise two workers could read
+ * the same count and both claim a tenant's last slot. A claim is one indexed UPDATE, so the
+ * lock is held for milliseconds.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IngestionJobQueue {
+
+    private static final String CLAIM_LOCK_SQL = "SELECT pg_advisory_xact_lock(hashtext('ingestion_jobs.claim'))";
+
+    private static final String CLAIM_SQL = """
+            WITH running AS (
+                SELECT tenant_id,
+                       count(*) FILTER (WHERE bulk_import_id IS NULL) AS interactive,
+                       count(*) FILTER (WHERE bulk_import_id IS NOT NULL) AS bulk
+                FROM ingestion_jobs
+                WHERE status = 'RUNNING' AND locked_until >= now() AND deleted = false
+                GROUP BY tenant_id)
+            UPDATE ingestion_jobs SET status = 'RUNNING', locked_by = ?, attempts = attempts + 1,
+                locked_until = now() + make_interval(secs => ?), updated_at = now()
+            WHERE id = (
+                SELECT j.id FROM ingestion_jobs j
+                LEFT JOIN running r ON r.tenant_id = j.tenant_id
+                WHERE j.deleted = false
+                  AND ((j.status = 'QUEUED' AND j.available_at <= now())
+                       OR (j.status = 'RUNNING' AND j.locked_until < now()))
+                  AND CASE WHEN j.bulk_import_id IS NULL THEN coalesce(r.interactive, 0) < ?
+                           ELSE coalesce(r.bulk, 0) < ? END
+                ORDER BY (j.bulk_import_id IS NOT NULL), j.available_at, j.id
+                LIMIT 1
+                FOR UPDATE OF j SKIP LOCKED)
+            RETURNING id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IngestionJobRepository jobRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.ingestion.visibility-timeout:PT5M}")
+    private Duration visibilityTimeout;
+
+    @Value("${app.ingestion.max-per-tenant:2}")
+    private int maxPerTenant;
+
+    @Value("${app.import.max-per-tenant:8}")
+    private int bulkMaxPerTenant;
+
+    @Value("${app.ingestion.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.ingestion.retry-backoff:PT30S}")
+    private Duration retryBackoff;
+
+    /**
+     * Queue ingestion of a document; joins the caller's transaction, so the job becomes
+     * visible together with the document row.
+     */
+    public IngestionJob enqueue(Document document) {
+        return enqueue(document, null);
+    }
+
+    /**
+     * Queue a document stored by a bulk import (null for a regular upload).
+     */
+    public IngestionJob enqueue(Document document, BulkImport bulkImport) {
+        IngestionJob job = IngestionJob.builder()
+                .document(document)
+                .tenant(document.getTenant())
+                .bulkImport(bulkImport)
+                .availableAt(LocalDateTime.now())
+                .build();
+        return jobRepository.save(job);
+    }
+
+    /**
+     * Queue a re-uploaded version of an already indexed document.
+     */
+    public IngestionJob enqueue(DocumentVersion version) {
+        Document document = version.getDocument();
+        IngestionJob job = IngestionJob.builder()
+                .document(document)
+                .tenant(document.getTenant())
+                .version(version)
+                .availableAt(LocalDateTime.now())
+                .build();
+        return jobRepository.save(job);
+    }
+
+    /**
+     * Claim the next runnable job for this worker, if any.
+     */
+    public Optional<Long> claim(String workerId) {
+        List<Long> ids = transactionTemplate.execute(status -> {
+            // The claim runs as a separate statement so its snapshot sees every claim committed before the lock
+            jdbcTemplate.execute(CLAIM_LOCK_SQL);
+            return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> rs.getLong("id"),
+                    workerId, visibilityTimeout.toSeconds(), maxPerTenant, bulkMaxPerTenant);
+        });
+        return ids.stream().findFirst();
+    }
+
+    /**
+     * Record progress and extend the lease. Returns false if this worker no longer holds the
+     * job (lease expired and another worker claimed it), in which case it must stop.
+     */
+    public boolean heartbeat(Long jobId, String workerId, int progress) {
+        return jdbcTemplate.update("""
+                UPDATE ingestion_jobs SET progress = ?, locked_until = now() + make_interval(secs => ?),
+                    updated_at = now()
+                WHERE id = ? AND locked_by = ? AND status = 'RUNNING'
+                """, progress, visibilityTimeout.toSeconds(), jobId, workerId) == 1;
+    }
+
+    public boolean complete(Long jobId, String workerId, DocumentService.IngestionReport report) {
+        return jdbcTemplate.update("""
+                UPDATE ingestion_jobs SET status = 'SUCCEEDED', progress = 100, locked_by = NULL,
+                    locked_until = NULL, last_error = NULL, chunk_count = ?, embeddings_reused = ?,
+                    updated_at = now()
+                WHERE id = ? AND locked_by = ? AND status = 'RUNNING'
+                """, report.chunks(), report.embeddingsReused(), jobId, workerId) == 1;
+    }
+
+    /**
+     * Requeue with exponential backoff, or mark FAILED once maxAttempts is reached.
+     *
+     * @return true if the job failed permanently
+     */
+    public boolean fail(Long jobId, String workerId, String error) {
+        Integer attempts = jdbcTemplate.queryForObject(
+                "SELECT attempts FROM ingestion_jobs WHERE id = ?", Integer.class, jobId);
+        boolean permanent = attempts == null || attempts >= maxAttempts;
+        long backoffSeconds = retryBackoff.toSeconds() << Math.min(Math.max(attempts != null ? attempts - 1 : 0, 0), 10);
+
+        jdbcTemplate.update("""
+                UPDATE ingestion_jobs SET status = ?, locked_by = NULL, locked_until = NULL, last_error = ?,
+                    available_at = now() + make_interval(secs => ?), updated_at = now()
+                WHERE id = ? AND locked_by = ?
+                """, permanent ? "FAILED" : "QUEUED", error, backoffSeconds, jobId, workerId);
+        return permanent;
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+}
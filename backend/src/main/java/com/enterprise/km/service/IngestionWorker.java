@@ -0,0 +1,168 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.repository.IngestionJobRepository;
+import com.enterprise.km.security.TenantContext;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Polls {@link IngestionJobQueue} and runs claimed jobs on a fixed pool of worker threads.
+ * Every node runs one; the queue keeps them from double-processing a document.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IngestionWorker {
+
+    private final IngestionJobQueue queue;
+    private final IngestionJobRepository jobRepository;
+    private final DocumentService documentService;
+
+    @Value("${app.ingestion.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ingestion.workers:0}")
+    private int workers; // 0 = one per core
+
+    @Value("${app.ingestion.poll-interval:PT1S}")
+    private Duration pollInterval;
+
+    private final String workerId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    private ScheduledExecutorService poller;
+    private ExecutorService executor;
+    private Semaphore slots;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (workers <= 0) {
+            workers = Runtime.getRuntime().availableProcessors();
+        }
+        slots = new Semaphore(workers);
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "ingestion-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ingestion-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        log.info("Ingestion worker {} started with {} threads", workerId, workers);
+    }
+
+    private void poll() {
+        try {
+            while (slots.tryAcquire()) {
+                Optional<Long> jobId = queue.claim(workerId);
+                if (jobId.isEmpty()) {
+                    slots.release();
+                    return;
+                }
+                executor.execute(() -> {
+                    try {
+                        run(jobId.get());
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.warn("Failed to poll ingestion queue: {}", e.getMessage());
+        }
+    }
+
+    private void run(Long jobId) {
+        IngestionJobRepository.JobTarget target = jobRepository.findTarget(jobId).orElse(null);
+        if (target == null) {
+            return;
+        }
+        Long documentId = target.getDocumentId();
+
+        // A job reclaimed after its lease lapsed has already used an attempt per claim
+        if (target.getAttempts() > queue.maxAttempts()) {
+            queue.fail(jobId, workerId, "Abandoned by its worker too many times");
+            markFailed(target, true);
+            return;
+        }
+
+        TenantContext.setTenantId(target.getTenantId());
+        try {
+            IntConsumer heartbeat = progress -> {
+                if (!queue.heartbeat(jobId, workerId, progress)) {
+                    throw new LeaseLostException(jobId);
+                }
+            };
+            DocumentService.IngestionReport report = target.getVersionId() != null
+                    ? documentService.ingestVersion(target.getVersionId(), heartbeat)
+                    : documentService.ingest(documentId, heartbeat);
+            queue.complete(jobId, workerId, report);
+        } catch (LeaseLostException e) {
+            // Another worker owns the job now; leave job and document state to it
+            log.warn(e.getMessage());
+        } catch (DocumentDeletedException e) {
+            // The delete removed the job too; nothing to complete or retry
+            log.info(e.getMessage());
+        } catch (Exception e) {
+            log.error("Ingestion job {} for document {} failed", jobId, documentId, e);
+            boolean permanent = queue.fail(jobId, workerId, e.getMessage());
+            markFailed(target, permanent);
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    private void markFailed(IngestionJobRepository.JobTarget target, boolean permanent) {
+        if (target.getVersionId() != null) {
+            documentService.markVersionFailed(target.getVersionId(), permanent);
+        } else {
+            documentService.markIngestionFailed(target.getDocumentId(), permanent);
+        }
+    }
+
+    private static class LeaseLostException extends RuntimeException {
+        LeaseLostException(Long jobId) {
+            super("Lost lease on ingestion job " + jobId);
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "node";
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        if (executor != null) {
+            // Interrupted jobs become claimable again once their lease expires
+            executor.shutdownNow();
+        }
+    }
+}
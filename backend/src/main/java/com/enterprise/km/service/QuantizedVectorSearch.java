@@ -0,0 +1,104 @@
+package com.enterprise.km.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Two-pass search over vector_store when the HNSW index is built on a quantized form:
+ * the ANN pass walks the halfvec / binary index for {@code topK * rerankFactor} candidates,
+ * then only those rows are re-ranked by exact float cosine distance.
+ *
+ * Used by {@link RetrievalService} instead of PgVectorStore when quantization is enabled.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class QuantizedVectorSearch {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.vector-store.type:pgvector}")
+    private String storeType;
+
+    @Value("${app.vector-store.quantization:none}")
+    private VectorQuantization quantization;
+
+    @Value("${app.vector-store.rerank-factor:4}")
+    private int rerankFactor;
+
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:768}")
+    private int dimensions;
+
+    public boolean isEnabled() {
+        return quantization != VectorQuantization.NONE && "pgvector".equals(storeType);
+    }
+
+    public List<Document> search(String tenantId, String question, int topK, double threshold, Long departmentId) {
+        String queryVector = toVectorLiteral(embeddingModel.embed(question));
+
+        StringBuilder where = new StringBuilder(TenantVectorIndexService.tenantPredicate(tenantId));
+        if (departmentId != null) {
+            where.append(" AND metadata::jsonb @@ '$.").append(VectorMetadata.DEPARTMENT_ID)
+                    .append(" == ").append(departmentId.longValue()).append("'::jsonpath");
+        }
+
+        // The inner ORDER BY must stay literally equal to the indexed expression
+        String sql = "SELECT id::text AS id, content, metadata::text AS metadata, distance FROM ("
+                + "SELECT id, content, metadata, embedding <=> CAST(? AS vector) AS distance "
+                + "FROM (SELECT id, content, metadata, embedding FROM vector_store WHERE " + where
+                + " ORDER BY " + quantization.orderExpression(dimensions) + " LIMIT ?) candidates"
+                + ") reranked WHERE distance <= ? ORDER BY distance LIMIT ?";
+
+        int candidates = topK * rerankFactor;
+        return transactionTemplate.execute(status -> {
+            // hnsw.ef_search caps how many rows an index scan can return (default 40)
+            jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + Math.max(40, candidates));
+            return jdbcTemplate.query(sql, (rs, rowNum) -> {
+                Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+                metadata.put("distance", rs.getFloat("distance"));
+                return new Document(rs.getString("id"), rs.getString("content"), metadata);
+            }, queryVector, queryVector, candidates, 1.0 - threshold, topK);
+        });
+    }
+
+    private Map<String, Object> parseMetadata(String json) {
+        if (json == null) {
+            return new HashMap<>();
+        }
+        try {
+            return new HashMap<>(objectMapper.readValue(json, METADATA_TYPE));
+        } catch (Exception e) {
+            log.warn("Unreadable vector metadata: {}", e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private static String toVectorLiteral(float[] vector) {
+        StringBuilder literal = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(vector[i]);
+        }
+        return literal.append(']').toString();
+    }
+}
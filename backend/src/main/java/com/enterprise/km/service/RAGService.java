@@ -1,5 +1,7 @@
 package com.enterprise.km.service;
 
+import com.enterprise.km.dto.SourceReference;
+import com.enterprise.km.repository.DocumentRepository;
 import com.enterprise.km.security.TenantContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,14 +12,20 @@ import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,8 +33,19 @@ import java.util.stream.Collectors;
 @Slf4j
 public class RAGService {
 
-    private final VectorStore vectorStore;
+    private final RetrievalService retrievalService;
+    private final ContextAssembler contextAssembler;
     private final ChatClient.Builder chatClientBuilder;
+    private final EmbeddingModel embeddingModel;
+    private final SemanticAnswerCache answerCache;
+    private final GenerationScheduler generationScheduler;
+    private final DocumentRepository documentRepository;
+    private final GenerationCoalescer coalescer;
+
+    public static final double QUERY_SIMILARITY_THRESHOLD = 0.5;
+    public static final double STREAM_SIMILARITY_THRESHOLD = 0.7;
+
+    private static final String NO_RESULT_ANSWER = "抱歉，我在知识库中没有找到与您问题相关的信息。";
 
     private static final String SYSTEM_PROMPT = """
             你是一个企业知识管理系统的AI助手。
@@ -48,112 +67,218 @@ public class RAGService {
             {context}
             """;
 
+    private static final String SUMMARY_SECTION = """
+
+            更早的对话摘要：
+            {summary}
+            """;
+
     /**
      * Query with conversation history
      */
-    public String queryWithHistory(String question, int topK, List<com.enterprise.km.model.Message> conversationHistory) {
+    public String queryWithHistory(String question, int topK, Long departmentId, boolean hybrid,
+                                   ConversationMemory conversationHistory) {
+        Retrieval retrieval = retrieve(question, topK, QUERY_SIMILARITY_THRESHOLD, departmentId, hybrid);
+        return generate(question, retrieval, conversationHistory);
+    }
+
+    /**
+     * Stream query with conversation history
+     */
+    public Flux<String> streamQueryWithHistory(String question, int topK, Long departmentId, boolean hybrid,
+                                               ConversationMemory conversationHistory) {
+        Retrieval retrieval = retrieve(question, topK, STREAM_SIMILARITY_THRESHOLD, departmentId, hybrid);
+        return streamGenerate(question, retrieval, conversationHistory);
+    }
+
+    /**
+     * Retrieval stage. Independent of the conversation, so callers may run it concurrently
+     * with loading history and saving the user message.
+     */
+    public Retrieval retrieve(String question, int topK, double threshold, Long departmentId, boolean hybrid) {
         String tenantId = TenantContext.getTenantId();
-        log.info("Processing RAG query for tenant: {}, question: {}", tenantId, question);
+        long cacheGeneration = answerCache.generation(tenantId);
 
         // Search for relevant documents
-        List<Document> similarDocuments = vectorStore.similaritySearch(
-            SearchRequest.query(question)
-                .withTopK(topK)
-                .withSimilarityThreshold(0.5)
-        );
+        List<Document> similarDocuments = retrievalService.retrieve(question, topK, threshold, departmentId, hybrid);
 
         log.info("Found {} similar documents", similarDocuments.size());
+        return new Retrieval(tenantId, similarDocuments, cacheGeneration, Instant.now());
+    }
 
-        if (similarDocuments.isEmpty()) {
-            return "抱歉，我在知识库中没有找到与您问题相关的信息。";
+    /**
+     * Describe the retrieved chunks for the client: document id and title, chunk index, score.
+     */
+    public List<SourceReference> sources(Retrieval retrieval) {
+        Set<Long> documentIds = new HashSet<>();
+        for (Document document : retrieval.documents()) {
+            Long documentId = documentId(document);
+            if (documentId != null) {
+                documentIds.add(documentId);
+            }
         }
+        Map<Long, String> titles = documentIds.isEmpty()
+                ? Map.of()
+                : documentRepository.findTitles(documentIds, retrieval.tenantId()).stream()
+                        .collect(Collectors.toMap(DocumentRepository.DocumentTitle::getId,
+                                DocumentRepository.DocumentTitle::getTitle));
 
-        // Build context from similar documents
-        String context = similarDocuments.stream()
-                .map(Document::getContent)
-                .collect(Collectors.joining("\n\n"));
+        List<SourceReference> sources = new ArrayList<>(retrieval.documents().size());
+        for (Document document : retrieval.documents()) {
+            Long documentId = documentId(document);
+            Object chunkIndex = document.getMetadata().get(VectorMetadata.CHUNK_INDEX);
+            Object distance = document.getMetadata().get("distance");
+            sources.add(SourceReference.builder()
+                    .documentId(documentId)
+                    .title(titles.get(documentId))
+                    .chunkIndex(chunkIndex instanceof Number n ? n.intValue() : null)
+                    .score(distance instanceof Number d ? 1.0 - d.doubleValue() : null)
+                    .build());
+        }
+        return sources;
+    }
 
-        // Build messages list
-        List<Message> messages = new ArrayList<>();
+    private static Long documentId(Document document) {
+        Object documentId = document.getMetadata().get(VectorMetadata.DOCUMENT_ID);
+        if (documentId instanceof Number n) {
+            return n.longValue();
+        }
+        if (documentId != null) {
+            try {
+                return Long.parseLong(documentId.toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
 
-        // Add system prompt
-        String promptTemplate = (conversationHistory != null && !conversationHistory.isEmpty())
-                ? SYSTEM_PROMPT_WITH_HISTORY
-                : SYSTEM_PROMPT;
-        SystemPromptTemplate systemPromptTemplate = new SystemPromptTemplate(promptTemplate);
-        Message systemMessage = systemPromptTemplate.createMessage(Map.of("context", context));
-        messages.add(systemMessage);
+    /**
+     * Generation stage: answer from a finished retrieval
+     */
+    public String generate(String question, Retrieval retrieval,
+                           ConversationMemory conversationHistory) {
+        String tenantId = retrieval.tenantId();
+        log.info("Processing RAG query for tenant: {}, question: {}", tenantId, question);
 
-        // Add conversation history (last N messages for context window)
-        if (conversationHistory != null && !conversationHistory.isEmpty()) {
-            int historyLimit = Math.min(conversationHistory.size(), 10); // Limit to last 10 messages
-            for (int i = Math.max(0, conversationHistory.size() - historyLimit); i < conversationHistory.size(); i++) {
-                com.enterprise.km.model.Message msg = conversationHistory.get(i);
-                if (msg.getRole() == com.enterprise.km.model.Message.MessageRole.USER) {
-                    messages.add(new UserMessage(msg.getContent()));
-                } else if (msg.getRole() == com.enterprise.km.model.Message.MessageRole.ASSISTANT) {
-                    messages.add(new AssistantMessage(msg.getContent()));
-                }
-            }
+        if (retrieval.documents().isEmpty()) {
+            return NO_RESULT_ANSWER;
         }
 
-        // Add current question
-        messages.add(new UserMessage(question));
+        // Repeated first-turn questions over an unchanged chunk set reuse the cached answer
+        AnswerCacheKey cacheKey = answerCacheKey(question, retrieval, conversationHistory);
+        if (cacheKey != null) {
+            Optional<String> cached = answerCache.get(tenantId, cacheKey.embedding(), cacheKey.chunkSetKey());
+            if (cached.isPresent()) {
+                log.info("Answer served from semantic cache for tenant: {}", tenantId);
+                return cached.get();
+            }
+        }
 
-        // Create prompt
-        Prompt prompt = new Prompt(messages);
+        Prompt prompt = buildPrompt(question, retrieval.documents(), conversationHistory);
 
-        // Get response from LLM
+        // Get response from LLM once the scheduler grants a generation slot
         ChatClient chatClient = chatClientBuilder.build();
-        String response = chatClient.prompt(prompt)
-                .call()
-                .content();
+        Supplier<String> generation = () -> {
+            String answer = generationScheduler.run(tenantId, () -> chatClient.prompt(prompt)
+                    .call()
+                    .content());
+            if (cacheKey != null) {
+                answerCache.put(tenantId, cacheKey.generation(), cacheKey.embedding(), cacheKey.chunkSetKey(), answer);
+            }
+            return answer;
+        };
+
+        // Identical questions in flight share one generation
+        String coalescingKey = coalescingKey(question, retrieval, conversationHistory);
+        String response = coalescingKey != null ? coalescer.call(coalescingKey, generation) : generation.get();
 
         log.info("RAG response generated successfully");
         return response;
     }
 
     /**
-     * Stream query with conversation history
+     * Streaming generation stage: answer from a finished retrieval
      */
-    public Flux<String> streamQueryWithHistory(String question, int topK, List<com.enterprise.km.model.Message> conversationHistory) {
-        String tenantId = TenantContext.getTenantId();
+    public Flux<String> streamGenerate(String question, Retrieval retrieval,
+                                       ConversationMemory conversationHistory) {
+        GenerationScheduler.Admission admission = generationScheduler.admit(retrieval.tenantId());
+        return streamGenerate(question, retrieval, conversationHistory, admission);
+    }
+
+    /**
+     * Streaming generation under an admission obtained earlier from {@link GenerationScheduler};
+     * the LLM stream starts once the slot is granted and the admission is released when it ends.
+     */
+    public Flux<String> streamGenerate(String question, Retrieval retrieval,
+                                       ConversationMemory conversationHistory,
+                                       GenerationScheduler.Admission admission) {
+        String tenantId = retrieval.tenantId();
         log.info("Processing streaming RAG query for tenant: {}, question: {}", tenantId, question);
 
-        // Search for relevant documents
-        List<Document> similarDocuments = vectorStore.similaritySearch(
-            SearchRequest.query(question)
-                .withTopK(topK)
-                .withSimilarityThreshold(0.7)
-        );
+        if (retrieval.documents().isEmpty()) {
+            admission.release();
+            return Flux.just(NO_RESULT_ANSWER);
+        }
 
-        log.info("Found {} similar documents", similarDocuments.size());
+        // Repeated first-turn questions over an unchanged chunk set reuse the cached answer
+        AnswerCacheKey cacheKey = answerCacheKey(question, retrieval, conversationHistory);
+        if (cacheKey != null) {
+            Optional<String> cached = answerCache.get(tenantId, cacheKey.embedding(), cacheKey.chunkSetKey());
+            if (cached.isPresent()) {
+                log.info("Answer served from semantic cache for tenant: {}", tenantId);
+                admission.release();
+                return Flux.just(cached.get());
+            }
+        }
+
+        Prompt prompt = buildPrompt(question, retrieval.documents(), conversationHistory);
 
-        if (similarDocuments.isEmpty()) {
-            return Flux.just("抱歉，我在知识库中没有找到与您问题相关的信息。");
+        // Get streaming response from LLM once the scheduler grants a generation slot
+        ChatClient chatClient = chatClientBuilder.build();
+        Flux<String> stream = Mono.fromFuture(admission.granted(), true)
+                .thenMany(Flux.defer(() -> chatClient.prompt(prompt)
+                        .stream()
+                        .content()))
+                .doFinally(signal -> admission.release());
+
+        if (cacheKey != null) {
+            StringBuilder fullAnswer = new StringBuilder();
+            stream = stream
+                    .doOnNext(fullAnswer::append)
+                    .doOnComplete(() -> answerCache.put(tenantId, cacheKey.generation(),
+                            cacheKey.embedding(), cacheKey.chunkSetKey(), fullAnswer.toString()));
         }
 
-        // Build context from similar documents
-        String context = similarDocuments.stream()
-                .map(Document::getContent)
-                .collect(Collectors.joining("\n\n"));
+        // Identical questions in flight follow one generation; a follower's own slot is returned at once
+        String coalescingKey = coalescingKey(question, retrieval, conversationHistory);
+        return coalescingKey != null ? coalescer.stream(coalescingKey, stream, admission::release) : stream;
+    }
+
+    private Prompt buildPrompt(String question, List<Document> similarDocuments,
+                               ConversationMemory conversationHistory) {
+        // Build deduplicated, token-budgeted context from similar documents
+        String context = contextAssembler.assemble(similarDocuments);
 
         // Build messages list
         List<Message> messages = new ArrayList<>();
 
         // Add system prompt
-        String promptTemplate = (conversationHistory != null && !conversationHistory.isEmpty())
-                ? SYSTEM_PROMPT_WITH_HISTORY
-                : SYSTEM_PROMPT;
+        boolean hasHistory = conversationHistory != null && !conversationHistory.isEmpty();
+        String promptTemplate = hasHistory ? SYSTEM_PROMPT_WITH_HISTORY : SYSTEM_PROMPT;
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("context", context);
+        if (hasHistory && conversationHistory.summary() != null && !conversationHistory.summary().isBlank()) {
+            promptTemplate += SUMMARY_SECTION;
+            variables.put("summary", conversationHistory.summary());
+        }
         SystemPromptTemplate systemPromptTemplate = new SystemPromptTemplate(promptTemplate);
-        Message systemMessage = systemPromptTemplate.createMessage(Map.of("context", context));
+        Message systemMessage = systemPromptTemplate.createMessage(variables);
         messages.add(systemMessage);
 
-        // Add conversation history (last N messages for context window)
-        if (conversationHistory != null && !conversationHistory.isEmpty()) {
-            int historyLimit = Math.min(conversationHistory.size(), 10);
-            for (int i = Math.max(0, conversationHistory.size() - historyLimit); i < conversationHistory.size(); i++) {
-                com.enterprise.km.model.Message msg = conversationHistory.get(i);
+        // Add recent turns; older ones are represented by the summary and the list is already token-bounded
+        if (hasHistory) {
+            for (com.enterprise.km.model.Message msg : conversationHistory.recentMessages()) {
                 if (msg.getRole() == com.enterprise.km.model.Message.MessageRole.USER) {
                     messages.add(new UserMessage(msg.getContent()));
                 } else if (msg.getRole() == com.enterprise.km.model.Message.MessageRole.ASSISTANT) {
@@ -165,13 +290,50 @@ public class RAGService {
         // Add current question
         messages.add(new UserMessage(question));
 
-        // Create prompt
-        Prompt prompt = new Prompt(messages);
+        return new Prompt(messages);
+    }
 
-        // Get streaming response from LLM
-        ChatClient chatClient = chatClientBuilder.build();
-        return chatClient.prompt(prompt)
-                .stream()
-                .content();
+    /**
+     * Answers are only cached for questions without conversation history, since a follow-up
+     * question's answer depends on the turns before it.
+     */
+    private AnswerCacheKey answerCacheKey(String question, Retrieval retrieval,
+                                          ConversationMemory conversationHistory) {
+        if (conversationHistory != null && !conversationHistory.isEmpty()) {
+            return null;
+        }
+        // Served from the query-embedding cache: retrieval just embedded this question
+        float[] embedding = embeddingModel.embed(question);
+        return new AnswerCacheKey(embedding, chunkSetKey(retrieval), retrieval.cacheGeneration());
+    }
+
+    /**
+     * tenant + normalized question + retrieved chunk set (+ cache generation, so an answer
+     * started before a document change is not shared after it). Like the answer cache, only
+     * questions without history are coalesced.
+     */
+    private static String coalescingKey(String question, Retrieval retrieval, ConversationMemory conversationHistory) {
+        if (conversationHistory != null && !conversationHistory.isEmpty()) {
+            return null;
+        }
+        return retrieval.tenantId() + '\u0000' + CachingEmbeddingModel.normalize(question)
+                + '\u0000' + chunkSetKey(retrieval) + '\u0000' + retrieval.cacheGeneration();
+    }
+
+    private static String chunkSetKey(Retrieval retrieval) {
+        return retrieval.documents().stream()
+                .map(Document::getId)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    private record AnswerCacheKey(float[] embedding, String chunkSetKey, long generation) {
+    }
+
+    /**
+     * Result of the retrieval stage; cacheGeneration is the tenant's answer-cache generation
+     * observed before searching, retrievedAt when the search returned.
+     */
+    public record Retrieval(String tenantId, List<Document> documents, long cacheGeneration, Instant retrievedAt) {
     }
 }
@@ -0,0 +1,127 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.DocumentChunk;
+import com.enterprise.km.repository.DocumentChunkRepository;
+import com.enterprise.km.security.TenantContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tenant-scoped chunk retrieval for RAG: pure vector search, or vector plus lexical
+ * search merged with reciprocal-rank fusion.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetrievalService {
+
+    private final VectorStore vectorStore;
+    private final DocumentChunkRepository chunkRepository;
+    private final QuantizedVectorSearch quantizedVectorSearch;
+
+    @Value("${app.retrieval.hybrid.candidates:20}")
+    private int hybridCandidates;
+
+    @Value("${app.retrieval.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    public List<Document> retrieve(String question, int topK, double threshold, Long departmentId, boolean hybrid) {
+        String tenantId = TenantContext.getTenantId();
+        if (tenantId == null) {
+            throw new IllegalStateException("Tenant context is not set");
+        }
+
+        if (!hybrid) {
+            return vectorSearch(tenantId, question, topK, threshold, departmentId);
+        }
+
+        int candidates = Math.max(topK, hybridCandidates);
+        List<Document> vectorHits = vectorSearch(tenantId, question, candidates, threshold, departmentId);
+        List<Document> lexicalHits = lexicalSearch(tenantId, question, candidates, departmentId);
+
+        List<Document> fused = reciprocalRankFusion(List.of(vectorHits, lexicalHits), rrfK, topK);
+        log.debug("Hybrid retrieval: {} vector hits, {} lexical hits, {} fused", vectorHits.size(),
+                lexicalHits.size(), fused.size());
+        return fused;
+    }
+
+    private List<Document> vectorSearch(String tenantId, String question, int topK, double threshold,
+                                        Long departmentId) {
+        if (quantizedVectorSearch.isEnabled()) {
+            return quantizedVectorSearch.search(tenantId, question, topK, threshold, departmentId);
+        }
+        return vectorStore.similaritySearch(tenantSearchRequest(tenantId, question, topK, threshold, departmentId));
+    }
+
+    /**
+     * Build a similarity search restricted to the tenant (and department, if given).
+     * The tenant predicate lets pgvector use the tenant's partial HNSW index.
+     */
+    private SearchRequest tenantSearchRequest(String tenantId, String question, int topK, double threshold,
+                                              Long departmentId) {
+        FilterExpressionBuilder filter = new FilterExpressionBuilder();
+        FilterExpressionBuilder.Op expression = filter.eq(VectorMetadata.TENANT_ID, tenantId);
+        if (departmentId != null) {
+            expression = filter.and(expression, filter.eq(VectorMetadata.DEPARTMENT_ID, departmentId));
+        }
+
+        return SearchRequest.query(question)
+                .withTopK(topK)
+                .withSimilarityThreshold(threshold)
+                .withFilterExpression(expression.build());
+    }
+
+    private List<Document> lexicalSearch(String tenantId, String question, int limit, Long departmentId) {
+        String query = CjkBigramTokenizer.toTsQuery(question);
+        if (query == null) {
+            return List.of();
+        }
+        return chunkRepository.findLexicalMatches(tenantId, departmentId, query, limit).stream()
+                .map(chunk -> toDocument(tenantId, chunk))
+                .toList();
+    }
+
+    /**
+     * Lexical hits are keyed by vectorId so the same chunk found by both searches fuses into one entry.
+     */
+    private Document toDocument(String tenantId, DocumentChunk chunk) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(VectorMetadata.TENANT_ID, tenantId);
+        metadata.put(VectorMetadata.DOCUMENT_ID, chunk.getDocument().getId());
+        metadata.put(VectorMetadata.CHUNK_INDEX, chunk.getChunkIndex());
+        String id = chunk.getVectorId() != null ? chunk.getVectorId() : "chunk-" + chunk.getId();
+        return new Document(id, chunk.getContent(), metadata);
+    }
+
+    /**
+     * score(d) = sum over lists of 1 / (k + rank), rank starting at 1.
+     */
+    static List<Document> reciprocalRankFusion(List<List<Document>> rankings, int k, int topK) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+
+        List<Document> fused = new ArrayList<>(documents.values());
+        fused.sort(Comparator.comparingDouble((Document d) -> scores.get(d.getId())).reversed());
+        return fused.size() > topK ? fused.subList(0, topK) : fused;
+    }
+}
@@ -0,0 +1,59 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.Document;
+import com.enterprise.km.model.DocumentChunk;
+import com.enterprise.km.repository.DocumentChunkRepository;
+import com.enterprise.km.repository.DocumentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Fills search_tokens for documents and chunks stored before the keyword index existed,
+ * in batches of 500 so the startup work never holds one long transaction.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SearchIndexBackfill {
+
+    private final DocumentRepository documentRepository;
+    private final DocumentChunkRepository chunkRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int documents = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> {
+                List<Document> pending = documentRepository.findTop500BySearchTokensIsNullAndDeletedFalse();
+                pending.forEach(d -> d.setSearchTokens(
+                        CjkBigramTokenizer.toIndexText(d.getFileName() + " " + (d.getContent() != null ? d.getContent() : ""))));
+                documentRepository.saveAll(pending);
+                return pending.size();
+            });
+            documents += batch;
+        } while (batch > 0);
+
+        int chunks = 0;
+        do {
+            batch = transactionTemplate.execute(status -> {
+                List<DocumentChunk> pending = chunkRepository.findTop500BySearchTokensIsNull();
+                pending.forEach(c -> c.setSearchTokens(CjkBigramTokenizer.toIndexText(c.getContent())));
+                chunkRepository.saveAll(pending);
+                return pending.size();
+            });
+            chunks += batch;
+        } while (batch > 0);
+
+        if (documents > 0 || chunks > 0) {
+            log.info("Search index backfill completed - Documents: {}, Chunks: {}", documents, chunks);
+        }
+    }
+}
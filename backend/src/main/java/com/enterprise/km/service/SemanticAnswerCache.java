@@ -0,0 +1,143 @@
+package com.enterprise.km.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-tenant cache of generated answers, matched by question-embedding cosine distance.
+ *
+ * A cached answer is only reused when the new question retrieved exactly the same chunk
+ * set, and every entry of a tenant is dropped as soon as that tenant's corpus changes.
+ */
+@Component
+@Slf4j
+public class SemanticAnswerCache {
+
+    private final Map<String, TenantAnswers> tenants = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+    private final double maxDistance;
+    private final int maxEntriesPerTenant;
+    private final long ttlMillis;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public SemanticAnswerCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.answer-cache.enabled:true}") boolean enabled,
+            @Value("${app.answer-cache.max-distance:0.05}") double maxDistance,
+            @Value("${app.answer-cache.max-entries-per-tenant:500}") int maxEntriesPerTenant,
+            @Value("${app.answer-cache.ttl:PT1H}") Duration ttl) {
+        this.enabled = enabled;
+        this.maxDistance = maxDistance;
+        this.maxEntriesPerTenant = maxEntriesPerTenant;
+        this.ttlMillis = ttl.toMillis();
+        this.hits = meterRegistry.counter("km.answer.cache", "result", "hit");
+        this.misses = meterRegistry.counter("km.answer.cache", "result", "miss");
+    }
+
+    /**
+     * Current corpus generation of the tenant. Capture it before generating an answer and
+     * pass it back to {@link #put} so answers built from a stale corpus are discarded.
+     */
+    public long generation(String tenantId) {
+        return tenant(tenantId).generation;
+    }
+
+    public Optional<String> get(String tenantId, float[] questionEmbedding, String chunkSetKey) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        TenantAnswers answers = tenant(tenantId);
+        long now = System.currentTimeMillis();
+
+        synchronized (answers) {
+            Iterator<Entry> it = answers.entries.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.expiresAt() <= now) {
+                    it.remove();
+                    continue;
+                }
+                if (entry.chunkSetKey().equals(chunkSetKey)
+                        && cosineDistance(entry.embedding(), questionEmbedding) <= maxDistance) {
+                    // Move to the front so frequently asked questions survive eviction
+                    it.remove();
+                    answers.entries.addFirst(entry);
+                    hits.increment();
+                    return Optional.of(entry.answer());
+                }
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(String tenantId, long generation, float[] questionEmbedding, String chunkSetKey, String answer) {
+        if (!enabled || answer == null || answer.isBlank()) {
+            return;
+        }
+        TenantAnswers answers = tenant(tenantId);
+        synchronized (answers) {
+            if (answers.generation != generation) {
+                return;
+            }
+            answers.entries.addFirst(new Entry(questionEmbedding, chunkSetKey, answer,
+                    System.currentTimeMillis() + ttlMillis));
+            while (answers.entries.size() > maxEntriesPerTenant) {
+                answers.entries.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Drop all answers of a tenant. Called whenever a document of the tenant is added or removed.
+     */
+    public void invalidateTenant(String tenantId) {
+        TenantAnswers answers = tenant(tenantId);
+        synchronized (answers) {
+            answers.generation++;
+            answers.entries.clear();
+        }
+        log.debug("Answer cache invalidated for tenant {}", tenantId);
+    }
+
+    private TenantAnswers tenant(String tenantId) {
+        return tenants.computeIfAbsent(tenantId, id -> new TenantAnswers());
+    }
+
+    private static double cosineDistance(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return Double.MAX_VALUE;
+        }
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return Double.MAX_VALUE;
+        }
+        return 1.0 - dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private static class TenantAnswers {
+        private final LinkedList<Entry> entries = new LinkedList<>();
+        private volatile long generation;
+    }
+
+    private record Entry(float[] embedding, String chunkSetKey, String answer, long expiresAt) {
+    }
+}
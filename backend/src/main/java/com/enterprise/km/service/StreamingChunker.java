@@ -0,0 +1,99 @@
+package com.enterprise.km.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+
+import java.util.function.Consumer;
+
+/**
+ * Incremental version of the TokenTextSplitter(500, 100, 5, ...) split used for ingestion:
+ * 500-token cl100k windows, cut back to the last '.', '?', '!' or newline beyond 100 chars,
+ * trimmed with separators kept, fragments of 5 chars or fewer dropped.
+ *
+ * Text is appended as the parser produces it and every chunk goes to the sink as soon as its
+ * window is complete, so only about one window of text is buffered whatever the document
+ * size. Unlike TokenTextSplitter there is no cap on the number of chunks (it folded everything
+ * past chunk 1000 into one oversized chunk). Not thread-safe.
+ */
+public class StreamingChunker {
+
+    private static final int CHUNK_TOKENS = 500;
+    private static final int MIN_CHUNK_CHARS = 100;
+    private static final int MIN_CHUNK_LENGTH_TO_EMBED = 5;
+    // Encode once this much text is buffered: CJK runs about one token per char, English
+    // about four chars per token; the window doubles while it holds fewer than CHUNK_TOKENS
+    private static final int WINDOW_CHARS = CHUNK_TOKENS * 4;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry()
+            .getEncoding(EncodingType.CL100K_BASE);
+
+    private final Consumer<String> sink;
+    private final StringBuilder buffer = new StringBuilder();
+    private int windowChars = WINDOW_CHARS;
+
+    public StreamingChunker(Consumer<String> sink) {
+        this.sink = sink;
+    }
+
+    public void append(char[] text, int offset, int length) {
+        buffer.append(text, offset, length);
+        while (buffer.length() >= windowChars && emitChunk(false)) {
+            windowChars = WINDOW_CHARS;
+        }
+    }
+
+    /**
+     * Flush the buffered tail; call once after the last append.
+     */
+    public void finish() {
+        while (!buffer.isEmpty()) {
+            emitChunk(true);
+        }
+    }
+
+    /**
+     * Cut one chunk off the front of the buffer. Returns false (leaving the buffer alone)
+     * when more text is needed to fill a window.
+     */
+    private boolean emitChunk(boolean last) {
+        IntArrayList tokens = ENCODING.encode(buffer.toString());
+        if (tokens.size() < CHUNK_TOKENS && !last) {
+            windowChars = buffer.length() * 2;
+            return false;
+        }
+
+        String chunkText;
+        if (tokens.size() <= CHUNK_TOKENS) {
+            chunkText = buffer.toString();
+        } else {
+            IntArrayList window = new IntArrayList(CHUNK_TOKENS);
+            for (int i = 0; i < CHUNK_TOKENS; i++) {
+                window.add(tokens.get(i));
+            }
+            // A window can end inside a multi-byte character; take the text from the buffer so
+            // the chunk and what is consumed always line up
+            String decoded = ENCODING.decode(window);
+            int length = decoded.length();
+            while (length > 0 && decoded.charAt(length - 1) == REPLACEMENT) {
+                length--;
+            }
+            chunkText = buffer.substring(0, Math.max(1, Math.min(length, buffer.length())));
+        }
+
+        int lastPunctuation = Math.max(chunkText.lastIndexOf('.'), Math.max(chunkText.lastIndexOf('?'),
+                Math.max(chunkText.lastIndexOf('!'), chunkText.lastIndexOf('\n'))));
+        if (lastPunctuation != -1 && lastPunctuation > MIN_CHUNK_CHARS) {
+            chunkText = chunkText.substring(0, lastPunctuation + 1);
+        }
+        buffer.delete(0, chunkText.length());
+
+        String chunk = chunkText.trim();
+        if (chunk.length() > MIN_CHUNK_LENGTH_TO_EMBED) {
+            sink.accept(chunk);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package com.enterprise.km.service;
+
+import com.enterprise.km.model.Tenant;
+import com.enterprise.km.repository.TenantRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maintains one partial HNSW index per tenant on vector_store.
+ *
+ * The index predicate is the exact jsonpath filter PgVectorStore emits for
+ * {@code tenantId == '...'}, so the planner can prove the partial index applies and
+ * only walks the graph of the requesting tenant. With quantization enabled the indexes
+ * are built over the halfvec / binary form instead of the float vector, and once the new
+ * global index exists the HNSW indexes of any other quantization are dropped, so switching
+ * shrinks index memory instead of adding to it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TenantVectorIndexService {
+
+    private static final String HNSW_INDEXES_SQL = """
+            SELECT indexname, indexdef FROM pg_indexes
+            WHERE schemaname = current_schema() AND tablename = 'vector_store' AND indexdef LIKE '%USING hnsw%'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TenantRepository tenantRepository;
+
+    private final Set<String> indexedTenants = ConcurrentHashMap.newKeySet();
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "tenant-vector-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.vector-store.tenant-partial-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.vector-store.quantization:none}")
+    private VectorQuantization quantization;
+
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:768}")
+    private int dimensions;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexesForExistingTenants() {
+        indexExecutor.execute(() -> createIndex(globalIndexName(), null, "global"));
+        if (enabled) {
+            tenantRepository.findAll().stream()
+                    .map(Tenant::getTenantId)
+                    .forEach(this::ensureTenantIndex);
+        }
+        // Queued after the builds above, so the replacements exist before anything is dropped
+        indexExecutor.execute(this::dropOtherQuantizations);
+    }
+
+    /**
+     * Schedule creation of the tenant's partial index if this node has not done so yet.
+     * Runs CREATE INDEX CONCURRENTLY on a background thread, outside any transaction.
+     */
+    public void ensureTenantIndex(String tenantId) {
+        if (!enabled || tenantId == null || !indexedTenants.add(tenantId)) {
+            return;
+        }
+        String indexName = "vector_store_embedding_t_" + tenantId.toLowerCase().replaceAll("[^a-z0-9_]", "_")
+                + quantization.indexSuffix() + "_idx";
+        if (indexName.length() > 63) {
+            indexName = "vector_store_embedding_t_" + Integer.toHexString(tenantId.hashCode())
+                    + quantization.indexSuffix() + "_idx";
+        }
+        String name = indexName;
+        indexExecutor.execute(() -> {
+            if (!createIndex(name, tenantPredicate(tenantId), "tenant " + tenantId)) {
+                indexedTenants.remove(tenantId);
+            }
+        });
+    }
+
+    /**
+     * SQL predicate selecting one tenant's rows. It is the exact text PgVectorFilterExpressionConverter
+     * produces for tenantId == '...', so both PgVectorStore queries and hand-written ones match the
+     * partial index.
+     */
+    public static String tenantPredicate(String tenantId) {
+        String jsonPath = "$." + VectorMetadata.TENANT_ID + " == \""
+                + tenantId.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        return "metadata::jsonb @@ '" + jsonPath.replace("'", "''") + "'::jsonpath";
+    }
+
+    /**
+     * Drop global and per-tenant HNSW indexes built for another quantization, e.g. the float
+     * indexes left behind when quantization is turned on. Skipped while the global index of
+     * the current quantization is missing, so searches never lose their last index.
+     */
+    private void dropOtherQuantizations() {
+        try {
+            List<Map<String, Object>> indexes = jdbcTemplate.queryForList(HNSW_INDEXES_SQL);
+            boolean globalReady = indexes.stream().anyMatch(index -> globalIndexName().equals(index.get("indexname")));
+            if (!globalReady) {
+                log.warn("HNSW index {} is missing, keeping the indexes of other quantizations", globalIndexName());
+                return;
+            }
+            for (Map<String, Object> index : indexes) {
+                if (!((String) index.get("indexdef")).contains(quantization.operatorClass())) {
+                    String indexName = (String) index.get("indexname");
+                    jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+                    log.info("Dropped HNSW index {}, quantization is now {}", indexName, quantization);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to drop HNSW indexes of other quantizations: {}", e.getMessage());
+        }
+    }
+
+    private String globalIndexName() {
+        return "vector_store_embedding" + quantization.indexSuffix() + "_idx";
+    }
+
+    private boolean createIndex(String indexName, String predicate, String scope) {
+        String sql = "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName
+                + " ON vector_store USING hnsw (" + quantization.indexTarget(dimensions) + ")"
+                + (predicate != null ? " WHERE " + predicate : "");
+        try {
+            jdbcTemplate.execute(sql);
+            log.info("HNSW index {} ready for {}", indexName, scope);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to create HNSW index {} for {}: {}", indexName, scope, e.getMessage());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexExecutor.shutdownNow();
+    }
+}
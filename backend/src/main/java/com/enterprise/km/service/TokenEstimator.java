@@ -0,0 +1,57 @@
+package com.enterprise.km.service;
+
+/**
+ * Cheap token count estimate for prompt budgeting, without loading the model tokenizer.
+ *
+ * CJK characters are counted as one token each; other text as one token per four characters,
+ * which is close to what the qwen / llama BPE vocabularies produce for mixed Chinese-English text.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            if (Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN) {
+                cjk++;
+            } else {
+                other++;
+            }
+            i += Character.charCount(cp);
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * Longest prefix of text whose estimate is at most maxTokens.
+     */
+    public static String truncate(String text, int maxTokens) {
+        if (text == null || estimate(text) <= maxTokens) {
+            return text;
+        }
+        int cjk = 0;
+        int other = 0;
+        int end = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            if (Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN) {
+                cjk++;
+            } else {
+                other++;
+            }
+            if (cjk + (other + 3) / 4 > maxTokens) {
+                break;
+            }
+            i += Character.charCount(cp);
+            end = i;
+        }
+        return text.substring(0, end);
+    }
+}
@@ -0,0 +1,16 @@
+package com.enterprise.km.service;
+
+/**
+ * Metadata keys written on every vector_store row.
+ * Retrieval filters and the per-tenant partial indexes depend on these names.
+ */
+public final class VectorMetadata {
+
+    public static final String TENANT_ID = "tenantId";
+    public static final String DOCUMENT_ID = "documentId";
+    public static final String DEPARTMENT_ID = "departmentId";
+    public static final String CHUNK_INDEX = "chunkIndex";
+
+    private VectorMetadata() {
+    }
+}
@@ -0,0 +1,58 @@
+package com.enterprise.km.service;
+
+/**
+ * Compact representation the HNSW index is built over (app.vector-store.quantization).
+ *
+ * Rows always keep the full float vector; with HALFVEC or BINARY only the index holds the
+ * compact form, and the first-pass candidates are re-ranked by exact cosine distance.
+ */
+public enum VectorQuantization {
+
+    /** float32 index, 4 bytes per dimension */
+    NONE,
+    /** float16 index via halfvec, 2x smaller */
+    HALFVEC,
+    /** 1 bit per dimension via binary_quantize, 32x smaller */
+    BINARY;
+
+    /**
+     * Indexed expression and operator class, e.g. for CREATE INDEX ... USING hnsw (...).
+     */
+    public String indexTarget(int dimensions) {
+        return switch (this) {
+            case NONE -> "embedding " + operatorClass();
+            case HALFVEC -> "(embedding::halfvec(" + dimensions + ")) " + operatorClass();
+            case BINARY -> "(binary_quantize(embedding)::bit(" + dimensions + ")) " + operatorClass();
+        };
+    }
+
+    /**
+     * HNSW operator class of {@link #indexTarget}; tells this quantization's indexes apart from others.
+     */
+    String operatorClass() {
+        return switch (this) {
+            case NONE -> "vector_cosine_ops";
+            case HALFVEC -> "halfvec_cosine_ops";
+            case BINARY -> "bit_hamming_ops";
+        };
+    }
+
+    /**
+     * ORDER BY expression matching {@link #indexTarget}; the single placeholder is the query vector.
+     */
+    public String orderExpression(int dimensions) {
+        return switch (this) {
+            case NONE -> "embedding <=> CAST(? AS vector)";
+            case HALFVEC -> "embedding::halfvec(" + dimensions + ") <=> CAST(? AS halfvec(" + dimensions + "))";
+            case BINARY -> "binary_quantize(embedding)::bit(" + dimensions + ") <~> binary_quantize(CAST(? AS vector))";
+        };
+    }
+
+    String indexSuffix() {
+        return switch (this) {
+            case NONE -> "";
+            case HALFVEC -> "_hv";
+            case BINARY -> "_bq";
+        };
+    }
+}
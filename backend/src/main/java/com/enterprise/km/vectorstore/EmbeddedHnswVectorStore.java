@@ -0,0 +1,297 @@
+package com.enterprise.km.vectorstore;
+
+import com.enterprise.km.service.VectorMetadata;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * In-process {@link VectorStore} keeping one {@link HnswIndex} per tenant under dataDir.
+ *
+ * Searches are routed by the {@code tenantId == '...'} term of the filter expression, so a
+ * tenant query never touches another tenant's graph; any remaining filter terms are
+ * evaluated against node metadata while walking the graph. Partitions whose share of deleted
+ * vectors reaches compactThreshold are rebuilt in the background.
+ */
+@Slf4j
+public class EmbeddedHnswVectorStore implements VectorStore {
+
+    private static final String SHARED_PARTITION = "_shared";
+
+    private final EmbeddingModel embeddingModel;
+    private final Path dataDir;
+    private final int dimensions;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double compactThreshold;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "vector-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<HnswIndex> compacting = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, HnswIndex> partitions = new ConcurrentHashMap<>();
+    private final Map<String, String> partitionById = new ConcurrentHashMap<>();
+
+    public EmbeddedHnswVectorStore(EmbeddingModel embeddingModel, Path dataDir, int dimensions, int m,
+                                   int efConstruction, int efSearch, double compactThreshold,
+                                   ObjectMapper objectMapper) {
+        this.embeddingModel = embeddingModel;
+        this.dataDir = dataDir;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.compactThreshold = compactThreshold;
+        this.objectMapper = objectMapper;
+        openExistingPartitions();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getContent).toList());
+
+        Set<HnswIndex> touched = new HashSet<>();
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            String partition = partitionOf(document.getMetadata());
+            HnswIndex index = partition(partition);
+            index.add(document.getId(), document.getContent(), new HashMap<>(document.getMetadata()),
+                    embeddings.get(i));
+            partitionById.put(document.getId(), partition);
+            touched.add(index);
+        }
+        flush(touched);
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        Set<HnswIndex> touched = new HashSet<>();
+        boolean deleted = false;
+        for (String id : idList) {
+            String partition = partitionById.remove(id);
+            if (partition != null) {
+                HnswIndex index = partitions.get(partition);
+                if (index != null && index.delete(id)) {
+                    deleted = true;
+                    touched.add(index);
+                }
+            }
+        }
+        flush(touched);
+        return Optional.of(deleted);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        Filter.Expression filter = request.getFilterExpression();
+        Predicate<Map<String, Object>> predicate = filter != null
+                ? metadata -> matches(filter, metadata)
+                : metadata -> true;
+
+        String tenantId = filter != null ? tenantOf(filter) : null;
+        Collection<HnswIndex> targets = tenantId != null
+                ? Optional.ofNullable(partitions.get(partitionName(tenantId))).map(List::of).orElse(List.of())
+                : partitions.values();
+
+        int ef = Math.max(efSearch, request.getTopK());
+        double threshold = request.getSimilarityThreshold();
+        return targets.stream()
+                .flatMap(index -> index.search(query, request.getTopK(), ef, predicate).stream())
+                .filter(hit -> 1.0 - hit.distance() >= threshold)
+                .sorted(Comparator.comparingDouble(HnswIndex.Hit::distance))
+                .limit(request.getTopK())
+                .map(this::toDocument)
+                .toList();
+    }
+
+    @PreDestroy
+    public void close() {
+        compactor.shutdownNow();
+        for (HnswIndex index : partitions.values()) {
+            try {
+                index.flush();
+                index.close();
+            } catch (IOException e) {
+                log.warn("Failed to close vector segment: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Document toDocument(HnswIndex.Hit hit) {
+        Map<String, Object> metadata = new HashMap<>(hit.metadata());
+        metadata.put("distance", hit.distance());
+        return new Document(hit.id(), hit.content(), metadata);
+    }
+
+    private void openExistingPartitions() {
+        if (!Files.isDirectory(dataDir)) {
+            return;
+        }
+        try (Stream<Path> dirs = Files.list(dataDir)) {
+            dirs.filter(Files::isDirectory).filter(dir -> !HnswIndex.isWorkDirectory(dir)).forEach(dir -> {
+                String partition = dir.getFileName().toString();
+                HnswIndex index = partition(partition);
+                log.info("Opened vector segment {} with {} vectors", partition, index.size());
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open vector store at " + dataDir, e);
+        }
+    }
+
+    private HnswIndex partition(String partition) {
+        return partitions.computeIfAbsent(partition, name -> {
+            try {
+                HnswIndex index = HnswIndex.open(dataDir.resolve(name), dimensions, m, efConstruction, objectMapper);
+                index.forEachId(id -> partitionById.put(id, name));
+                return index;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open vector segment " + name, e);
+            }
+        });
+    }
+
+    private void flush(Set<HnswIndex> indexes) {
+        for (HnswIndex index : indexes) {
+            try {
+                index.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to persist vector segment", e);
+            }
+            if (index.tombstoneRatio() >= compactThreshold && compacting.add(index)) {
+                compactor.execute(() -> compact(index));
+            }
+        }
+    }
+
+    /**
+     * Rebuild a partition without its deleted vectors; runs in the background, one at a time.
+     */
+    private void compact(HnswIndex index) {
+        try {
+            long started = System.nanoTime();
+            if (index.compact()) {
+                log.info("Compacted vector segment to {} vectors in {} ms", index.size(),
+                        (System.nanoTime() - started) / 1_000_000);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to compact vector segment: {}", e.getMessage());
+        } finally {
+            compacting.remove(index);
+        }
+    }
+
+    private static String partitionOf(Map<String, Object> metadata) {
+        Object tenantId = metadata.get(VectorMetadata.TENANT_ID);
+        return tenantId != null ? partitionName(tenantId.toString()) : SHARED_PARTITION;
+    }
+
+    /**
+     * Directory name for a tenant; ids that are not plain path names are hex encoded.
+     */
+    private static String partitionName(String tenantId) {
+        if (tenantId.matches("[A-Za-z0-9][A-Za-z0-9_-]*")) {
+            return tenantId;
+        }
+        return "x" + HexFormat.of().formatHex(tenantId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The tenant id when the expression is tenantId == x, possibly AND-ed with other terms.
+     */
+    private static String tenantOf(Filter.Expression expression) {
+        if (expression.type() == Filter.ExpressionType.EQ
+                && expression.left() instanceof Filter.Key key
+                && VectorMetadata.TENANT_ID.equals(key.key())
+                && expression.right() instanceof Filter.Value value) {
+            return String.valueOf(value.value());
+        }
+        if (expression.type() == Filter.ExpressionType.AND) {
+            String left = expression.left() instanceof Filter.Expression l ? tenantOf(l) : null;
+            return left != null ? left
+                    : expression.right() instanceof Filter.Expression r ? tenantOf(r) : null;
+        }
+        return null;
+    }
+
+    private static boolean matches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        Filter.Expression expression = (Filter.Expression) operand;
+        return switch (expression.type()) {
+            case AND -> matches(expression.left(), metadata) && matches(expression.right(), metadata);
+            case OR -> matches(expression.left(), metadata) || matches(expression.right(), metadata);
+            case NOT -> !matches(expression.left(), metadata);
+            case EQ -> compare(expression, metadata, c -> c == 0);
+            case NE -> !compare(expression, metadata, c -> c == 0);
+            case GT -> compare(expression, metadata, c -> c > 0);
+            case GTE -> compare(expression, metadata, c -> c >= 0);
+            case LT -> compare(expression, metadata, c -> c < 0);
+            case LTE -> compare(expression, metadata, c -> c <= 0);
+            case IN -> in(expression, metadata);
+            case NIN -> !in(expression, metadata);
+            default -> throw new UnsupportedOperationException("Unsupported filter: " + expression.type());
+        };
+    }
+
+    /**
+     * Compares a metadata value with the filter value; a missing key never satisfies the comparison.
+     */
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata, IntPredicate test) {
+        Object actual = metadata.get(((Filter.Key) expression.left()).key());
+        Object expected = ((Filter.Value) expression.right()).value();
+        return actual != null && test.test(compareValues(actual, expected));
+    }
+
+    private static boolean in(Filter.Expression expression, Map<String, Object> metadata) {
+        Object actual = metadata.get(((Filter.Key) expression.left()).key());
+        Object expected = ((Filter.Value) expression.right()).value();
+        return actual != null && expected instanceof List<?> values
+                && values.stream().anyMatch(value -> compareValues(actual, value) == 0);
+    }
+
+    /**
+     * Numbers compare by value so a Long filter matches an Integer read back from a snapshot.
+     */
+    private static int compareValues(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number e) {
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(e.toString()));
+        }
+        return actual.toString().compareTo(String.valueOf(expected));
+    }
+}
@@ -0,0 +1,989 @@
+package com.enterprise.km.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * HNSW graph for one tenant, backed by segment files.
+ *
+ * vectors.seg holds the normalized float vectors (node i at i * dimensions floats) and
+ * graph.seg the level-0 adjacency lists (count + M0 neighbor slots per node); both are
+ * memory-mapped and live off-heap in the page cache. A single mapping cannot exceed 2 GB, so
+ * the files are mapped in segments of a fixed power-of-two node count, at most SEGMENT_BYTES
+ * each; only the last segment is ever remapped, to grow it. payloads.seg is an append-only file
+ * of chunk texts, read by offset only for search hits. nodes.log is an append-only journal
+ * of node additions (id, metadata, payload offset), upper-layer edge changes, tombstones
+ * and entry point moves; {@link #flush()} appends what changed since the last flush and
+ * reopening replays it. The heap keeps ids, metadata and upper layers only.
+ *
+ * Deletes are tombstones until {@link #compact()} rebuilds the index from its live nodes,
+ * which drops deleted vectors and texts from disk.
+ *
+ * Writers take the write lock, searches share the read lock.
+ */
+class HnswIndex implements AutoCloseable {
+
+    private static final String VECTORS_FILE = "vectors.seg";
+    private static final String GRAPH_FILE = "graph.seg";
+    private static final String PAYLOADS_FILE = "payloads.seg";
+    private static final String JOURNAL_FILE = "nodes.log";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final String REPLACED_SUFFIX = ".replaced";
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int SEGMENT_BYTES = 1 << 30;
+
+    private static final byte RECORD_HEADER = 0;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_UPPER = 2;
+    private static final byte RECORD_DELETE = 3;
+    private static final byte RECORD_ENTRY = 4;
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final Path directory;
+    private final int dimensions;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final int segmentBytes;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final ObjectMapper objectMapper;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Serializes flushes and compaction; never taken while holding the index lock
+    private final Object flushLock = new Object();
+
+    private FileChannel vectorChannel;
+    private FileChannel graphChannel;
+    private FileChannel payloadChannel;
+    private FileChannel journalChannel;
+    private final List<MappedByteBuffer> vectorMappings = new ArrayList<>();
+    private final List<MappedByteBuffer> graphMappings = new ArrayList<>();
+    private final List<FloatBuffer> vectors = new ArrayList<>();
+    private final List<IntBuffer> level0 = new ArrayList<>();
+    private int capacity;
+    private long payloadEnd;
+
+    private List<Node> nodes = new ArrayList<>();
+    private Map<String, Integer> nodeById = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int tombstones;
+    private long modifications;
+    // Journal records written since the last flush, guarded by the write lock
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private DataOutputStream pendingOut = new DataOutputStream(pending);
+
+    private HnswIndex(Path directory, int dimensions, int m, int efConstruction, ObjectMapper objectMapper,
+                      int segmentBytes) {
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.m0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.objectMapper = objectMapper;
+        this.segmentBytes = segmentBytes;
+        int nodeBytes = Math.max(dimensions * Float.BYTES, (m0 + 1) * Integer.BYTES);
+        int segmentNodes = Integer.highestOneBit(Math.max(1, segmentBytes / nodeBytes));
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentNodes);
+        this.segmentMask = segmentNodes - 1;
+    }
+
+    static HnswIndex open(Path directory, int dimensions, int m, int efConstruction,
+                          ObjectMapper objectMapper) throws IOException {
+        return open(directory, dimensions, m, efConstruction, objectMapper, SEGMENT_BYTES);
+    }
+
+    static HnswIndex open(Path directory, int dimensions, int m, int efConstruction, ObjectMapper objectMapper,
+                          int segmentBytes) throws IOException {
+        recoverCompaction(directory);
+        Files.createDirectories(directory);
+        HnswIndex index = new HnswIndex(directory, dimensions, m, efConstruction, objectMapper, segmentBytes);
+        index.load();
+        return index;
+    }
+
+    /**
+     * Directories left next to an index by a compaction; not partitions of their own.
+     */
+    static boolean isWorkDirectory(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(COMPACTING_SUFFIX) || name.endsWith(REPLACED_SUFFIX);
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void forEachId(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            nodeById.keySet().forEach(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert a vector; an existing node with the same id is replaced.
+     */
+    void add(String id, String content, Map<String, Object> metadata, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        float[] normalized = normalize(vector);
+        Map<String, Object> nodeMetadata = metadata != null ? metadata : Map.of();
+        byte[] metadataJson = toJson(nodeMetadata);
+        byte[] payload = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+        lock.writeLock().lock();
+        try {
+            // Grow first: a failed mapping must leave the index as it was
+            int node = nodes.size();
+            ensureCapacity(node + 1);
+
+            modifications++;
+            Integer previous = nodeById.remove(id);
+            if (previous != null) {
+                tombstone(previous);
+            }
+
+            long payloadOffset = appendPayload(payload);
+            vectors.get(segment(node)).put(slot(node) * dimensions, normalized);
+            level0.get(segment(node)).put(slot(node) * (m0 + 1), 0);
+
+            int level = (int) Math.floor(-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+            int[][] upper = new int[level][];
+            for (int l = 0; l < level; l++) {
+                upper[l] = new int[0];
+            }
+            nodes.add(new Node(id, nodeMetadata, upper, payloadOffset, payload.length, false));
+            nodeById.put(id, node);
+            journalAdd(node, id, level, payloadOffset, payload.length, metadataJson);
+
+            if (entryPoint < 0) {
+                setEntryPoint(node, level);
+                return;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(normalized, current, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                List<Candidate> candidates = searchLayer(normalized, current, efConstruction, l);
+                int maxNeighbors = l == 0 ? m0 : m;
+                int[] selected = closest(candidates, maxNeighbors);
+                setNeighbors(node, l, selected);
+                for (int neighbor : selected) {
+                    connect(neighbor, node, l, maxNeighbors);
+                }
+                current = candidates.get(0).node();
+            }
+
+            if (level > maxLevel) {
+                setEntryPoint(node, level);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean delete(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeById.remove(id);
+            if (node == null) {
+                return false;
+            }
+            modifications++;
+            // Tombstone: the node stays in the graph for traversal but is never returned
+            tombstone(node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Share of nodes that are tombstones, i.e. disk and graph space that compaction would free.
+     */
+    double tombstoneRatio() {
+        lock.readLock().lock();
+        try {
+            return nodes.isEmpty() ? 0 : (double) tombstones / nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * k nearest live nodes accepted by the filter, closest first. The beam widens until
+     * k matches are found or the whole graph has been considered.
+     */
+    List<Hit> search(float[] query, int k, int ef, Predicate<Map<String, Object>> filter) {
+        float[] normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedyClosest(normalized, current, l);
+            }
+
+            int beam = Math.max(ef, k);
+            while (true) {
+                List<Candidate> matches = new ArrayList<>(k);
+                for (Candidate candidate : searchLayer(normalized, current, beam, 0)) {
+                    Node node = nodes.get(candidate.node());
+                    if (!node.deleted && filter.test(node.metadata)) {
+                        matches.add(candidate);
+                        if (matches.size() == k) {
+                            break;
+                        }
+                    }
+                }
+                if (matches.size() >= k || beam >= nodes.size()) {
+                    List<Hit> hits = new ArrayList<>(matches.size());
+                    for (Candidate match : matches) {
+                        Node node = nodes.get(match.node());
+                        hits.add(new Hit(node.id, readPayload(node), node.metadata, match.distance()));
+                    }
+                    return hits;
+                }
+                beam = Math.min(nodes.size(), beam * 4);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Make the segment files durable and append the journal records written since the last
+     * flush. Costs the size of the change, not of the index; writers are blocked only while
+     * the pending records are handed over.
+     */
+    void flush() throws IOException {
+        synchronized (flushLock) {
+            byte[] records;
+            List<MappedByteBuffer> toForce;
+            lock.writeLock().lock();
+            try {
+                records = pending.toByteArray();
+                pending = new ByteArrayOutputStream();
+                pendingOut = new DataOutputStream(pending);
+                toForce = new ArrayList<>(vectorMappings);
+                toForce.addAll(graphMappings);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (records.length == 0) {
+                return;
+            }
+            // Vectors, edges and payloads first, so every journaled node has its data on disk
+            for (MappedByteBuffer mapping : toForce) {
+                mapping.force();
+            }
+            payloadChannel.force(false);
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            long position = journalChannel.size();
+            while (buffer.hasRemaining()) {
+                position += journalChannel.write(buffer, position);
+            }
+            journalChannel.force(false);
+        }
+    }
+
+    /**
+     * Rebuild the index from its live nodes into fresh segment files and swap them in, which
+     * physically removes tombstoned vectors and texts. The copy is built from a snapshot
+     * without holding the lock (vectors and payloads of existing nodes never change); writes
+     * made meanwhile are replayed onto it under the write lock just before the swap.
+     * Returns false when there was nothing to do.
+     */
+    boolean compact() throws IOException {
+        synchronized (flushLock) {
+            flush();
+            int snapshotSize;
+            BitSet live;
+            List<Node> snapshot;
+            List<FloatBuffer> snapshotVectors;
+            lock.readLock().lock();
+            try {
+                if (tombstones == 0) {
+                    return false;
+                }
+                snapshotSize = nodes.size();
+                snapshot = new ArrayList<>(nodes);
+                snapshotVectors = vectors.stream().map(FloatBuffer::duplicate).toList();
+                live = new BitSet(snapshotSize);
+                for (int node = 0; node < snapshotSize; node++) {
+                    live.set(node, !snapshot.get(node).deleted);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Path work = directory.resolveSibling(directory.getFileName() + COMPACTING_SUFFIX);
+            deleteRecursively(work);
+            HnswIndex copy = open(work, dimensions, m, efConstruction, objectMapper, segmentBytes);
+            try {
+                for (int node = live.nextSetBit(0); node >= 0; node = live.nextSetBit(node + 1)) {
+                    Node source = snapshot.get(node);
+                    float[] vector = new float[dimensions];
+                    snapshotVectors.get(segment(node)).get(slot(node) * dimensions, vector);
+                    copy.add(source.id, readPayload(source), source.metadata, vector);
+                }
+
+                lock.writeLock().lock();
+                try {
+                    // Catch up with deletes, then adds, made while the copy was built
+                    for (int node = live.nextSetBit(0); node >= 0; node = live.nextSetBit(node + 1)) {
+                        if (nodes.get(node).deleted) {
+                            copy.delete(nodes.get(node).id);
+                        }
+                    }
+                    for (int node = snapshotSize; node < nodes.size(); node++) {
+                        Node source = nodes.get(node);
+                        if (!source.deleted) {
+                            copy.add(source.id, readPayload(source), source.metadata, vector(node));
+                        }
+                    }
+                    copy.flush();
+                    copy.close();
+
+                    closeChannels();
+                    Path replaced = directory.resolveSibling(directory.getFileName() + REPLACED_SUFFIX);
+                    Files.move(directory, replaced, StandardCopyOption.ATOMIC_MOVE);
+                    Files.move(work, directory, StandardCopyOption.ATOMIC_MOVE);
+                    deleteRecursively(replaced);
+                    load();
+                    return true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (IOException | RuntimeException e) {
+                copy.close();
+                deleteRecursively(work);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closeChannels();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * (Re)open the segment files and rebuild the in-memory state from the journal.
+     */
+    private void load() throws IOException {
+        nodes = new ArrayList<>();
+        nodeById = new HashMap<>();
+        entryPoint = -1;
+        maxLevel = -1;
+        tombstones = 0;
+        pending = new ByteArrayOutputStream();
+        pendingOut = new DataOutputStream(pending);
+        vectorMappings.clear();
+        graphMappings.clear();
+        vectors.clear();
+        level0.clear();
+        capacity = 0;
+
+        vectorChannel = openChannel(VECTORS_FILE);
+        graphChannel = openChannel(GRAPH_FILE);
+        payloadChannel = openChannel(PAYLOADS_FILE);
+        journalChannel = openChannel(JOURNAL_FILE);
+        payloadEnd = payloadChannel.size();
+
+        if (journalChannel.size() == 0) {
+            writeHeader();
+        }
+        List<int[]> upperEdges = replayJournal();
+        ensureCapacity(Math.max(1, nodes.size()));
+        for (int[] edge : upperEdges) {
+            nodes.get(edge[0]).upper[edge[1] - 1] = Arrays.copyOfRange(edge, 2, edge.length);
+        }
+        dropDanglingEdges();
+    }
+
+    private FileChannel openChannel(String file) throws IOException {
+        return FileChannel.open(directory.resolve(file),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void closeChannels() throws IOException {
+        vectorChannel.close();
+        graphChannel.close();
+        payloadChannel.close();
+        journalChannel.close();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeByte(RECORD_HEADER);
+        out.writeInt(dimensions);
+        journalChannel.write(ByteBuffer.wrap(header.toByteArray()), 0);
+        journalChannel.force(false);
+    }
+
+    /**
+     * Replays nodes.log; upper-layer edges are returned last-write-wins per (node, level). A
+     * record cut short by a crash ends the replay and is truncated away.
+     */
+    private List<int[]> replayJournal() throws IOException {
+        Map<Long, int[]> upperEdges = new HashMap<>();
+        long valid = 0;
+        journalChannel.position(0);
+        CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(Channels.newInputStream(journalChannel)));
+        DataInputStream in = new DataInputStream(counter);
+        try {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                switch (type) {
+                    case RECORD_HEADER -> {
+                        int stored = in.readInt();
+                        if (stored != dimensions) {
+                            throw new IllegalStateException("Vector segment " + directory + " has " + stored
+                                    + " dimensions, expected " + dimensions);
+                        }
+                    }
+                    case RECORD_ADD -> {
+                        int node = in.readInt();
+                        String id = in.readUTF();
+                        int level = in.readInt();
+                        long payloadOffset = in.readLong();
+                        int payloadLength = in.readInt();
+                        byte[] metadataJson = new byte[in.readInt()];
+                        in.readFully(metadataJson);
+                        if (node != nodes.size()) {
+                            throw new IllegalStateException("Corrupt journal in " + directory);
+                        }
+                        int[][] upper = new int[level][];
+                        for (int l = 0; l < level; l++) {
+                            upper[l] = new int[0];
+                        }
+                        Integer previous = nodeById.put(id, node);
+                        if (previous != null) {
+                            nodes.get(previous).deleted = true;
+                            tombstones++;
+                        }
+                        nodes.add(new Node(id, fromJson(metadataJson), upper, payloadOffset, payloadLength, false));
+                    }
+                    case RECORD_UPPER -> {
+                        int node = in.readInt();
+                        int level = in.readInt();
+                        int count = in.readInt();
+                        int[] edge = new int[count + 2];
+                        edge[0] = node;
+                        edge[1] = level;
+                        for (int i = 0; i < count; i++) {
+                            edge[i + 2] = in.readInt();
+                        }
+                        upperEdges.put(((long) node << 8) | level, edge);
+                    }
+                    case RECORD_DELETE -> {
+                        int node = in.readInt();
+                        Node deleted = nodes.get(node);
+                        if (!deleted.deleted) {
+                            deleted.deleted = true;
+                            tombstones++;
+                            nodeById.remove(deleted.id, node);
+                        }
+                    }
+                    case RECORD_ENTRY -> {
+                        entryPoint = in.readInt();
+                        maxLevel = in.readInt();
+                    }
+                    default -> throw new EOFException("Unknown journal record " + type);
+                }
+                valid = counter.count;
+            }
+        } catch (EOFException e) {
+            // Partial trailing record from an interrupted flush
+        }
+        if (valid < journalChannel.size()) {
+            journalChannel.truncate(valid);
+        }
+        return new ArrayList<>(upperEdges.values());
+    }
+
+    /**
+     * Level-0 lists are written in place and may point at nodes whose journal record never
+     * made it to disk; such edges are removed once on open.
+     */
+    private void dropDanglingEdges() {
+        int count = nodes.size();
+        for (int node = 0; node < count; node++) {
+            IntBuffer graph = level0.get(segment(node));
+            int length = graph.get(slot(node) * (m0 + 1));
+            if (length < 0 || length > m0) {
+                graph.put(slot(node) * (m0 + 1), 0);
+                continue;
+            }
+            int[] current = neighbors(node, 0);
+            int kept = 0;
+            for (int neighbor : current) {
+                if (neighbor >= 0 && neighbor < count) {
+                    current[kept++] = neighbor;
+                }
+            }
+            if (kept != current.length) {
+                setNeighbors(node, 0, Arrays.copyOf(current, kept));
+            }
+        }
+        if (entryPoint >= count) {
+            entryPoint = -1;
+            maxLevel = -1;
+        }
+    }
+
+    private void tombstone(int node) {
+        Node deleted = nodes.get(node);
+        if (!deleted.deleted) {
+            deleted.deleted = true;
+            tombstones++;
+            journal(out -> {
+                out.writeByte(RECORD_DELETE);
+                out.writeInt(node);
+            });
+        }
+    }
+
+    private void setEntryPoint(int node, int level) {
+        entryPoint = node;
+        maxLevel = level;
+        journal(out -> {
+            out.writeByte(RECORD_ENTRY);
+            out.writeInt(node);
+            out.writeInt(level);
+        });
+    }
+
+    private void journalAdd(int node, String id, int level, long payloadOffset, int payloadLength,
+                            byte[] metadataJson) {
+        journal(out -> {
+            out.writeByte(RECORD_ADD);
+            out.writeInt(node);
+            out.writeUTF(id);
+            out.writeInt(level);
+            out.writeLong(payloadOffset);
+            out.writeInt(payloadLength);
+            out.writeInt(metadataJson.length);
+            out.write(metadataJson);
+        });
+    }
+
+    private void journalUpper(int node, int level, int[] neighbors) {
+        journal(out -> {
+            out.writeByte(RECORD_UPPER);
+            out.writeInt(node);
+            out.writeInt(level);
+            out.writeInt(neighbors.length);
+            for (int neighbor : neighbors) {
+                out.writeInt(neighbor);
+            }
+        });
+    }
+
+    private void journal(JournalWriter writer) {
+        try {
+            writer.write(pendingOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long appendPayload(byte[] payload) {
+        long offset = payloadEnd;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += payloadChannel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write payload in " + directory, e);
+        }
+        payloadEnd = offset + payload.length;
+        return offset;
+    }
+
+    private String readPayload(Node node) {
+        ByteBuffer buffer = ByteBuffer.allocate(node.payloadLength);
+        try {
+            long position = node.payloadOffset;
+            while (buffer.hasRemaining()) {
+                int read = payloadChannel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Payload of " + node.id + " is truncated");
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read payload in " + directory, e);
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    private byte[] toJson(Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsBytes(metadata);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Object> fromJson(byte[] json) throws IOException {
+        return objectMapper.readValue(json, METADATA_TYPE);
+    }
+
+    /**
+     * Finish or roll back a compaction interrupted between its two directory renames.
+     */
+    private static void recoverCompaction(Path directory) throws IOException {
+        Path replaced = directory.resolveSibling(directory.getFileName() + REPLACED_SUFFIX);
+        if (Files.exists(replaced)) {
+            if (Files.exists(directory)) {
+                deleteRecursively(replaced);
+            } else {
+                Files.move(replaced, directory, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        deleteRecursively(directory.resolveSibling(directory.getFileName() + COMPACTING_SUFFIX));
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Map segments until nodeCount nodes fit. The last segment is remapped at twice its size
+     * until it is full, then a new one starts; earlier segments are never touched.
+     */
+    private void ensureCapacity(int nodeCount) {
+        int segmentNodes = segmentMask + 1;
+        while (capacity < nodeCount) {
+            int last = vectors.size() - 1;
+            int mapped = capacity - (last << segmentShift);
+            if (last < 0 || mapped == segmentNodes) {
+                mapSegment(last + 1, Math.min(INITIAL_CAPACITY, segmentNodes));
+            } else {
+                mapSegment(last, Math.min(segmentNodes, mapped * 2));
+            }
+        }
+    }
+
+    private void mapSegment(int segment, int segmentCapacity) {
+        long first = (long) segment << segmentShift;
+        long vectorBytes = (long) dimensions * Float.BYTES;
+        long graphBytes = (long) (m0 + 1) * Integer.BYTES;
+        MappedByteBuffer vectorMapping;
+        MappedByteBuffer graphMapping;
+        try {
+            if (segment < vectorMappings.size()) {
+                vectorMappings.get(segment).force();
+                graphMappings.get(segment).force();
+            }
+            vectorMapping = vectorChannel.map(FileChannel.MapMode.READ_WRITE, first * vectorBytes,
+                    segmentCapacity * vectorBytes);
+            graphMapping = graphChannel.map(FileChannel.MapMode.READ_WRITE, first * graphBytes,
+                    segmentCapacity * graphBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to map vector segment " + directory, e);
+        }
+        vectorMapping.order(ByteOrder.nativeOrder());
+        graphMapping.order(ByteOrder.nativeOrder());
+        if (segment < vectorMappings.size()) {
+            vectorMappings.set(segment, vectorMapping);
+            graphMappings.set(segment, graphMapping);
+            vectors.set(segment, vectorMapping.asFloatBuffer());
+            level0.set(segment, graphMapping.asIntBuffer());
+        } else {
+            vectorMappings.add(vectorMapping);
+            graphMappings.add(graphMapping);
+            vectors.add(vectorMapping.asFloatBuffer());
+            level0.add(graphMapping.asIntBuffer());
+        }
+        capacity = (int) first + segmentCapacity;
+    }
+
+    private int segment(int node) {
+        return node >>> segmentShift;
+    }
+
+    private int slot(int node) {
+        return node & segmentMask;
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : neighbors(current, level)) {
+                float d = distance(query, neighbor);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer; returns up to ef candidates sorted by distance.
+     */
+    private List<Candidate> searchLayer(float[] query, int entry, int ef, int level) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance));
+        PriorityQueue<Candidate> results = new PriorityQueue<>(
+                Comparator.comparingDouble(Candidate::distance).reversed());
+
+        Candidate start = new Candidate(entry, distance(query, entry));
+        visited.set(entry);
+        frontier.add(start);
+        results.add(start);
+
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (results.size() >= ef && closest.distance() > results.peek().distance()) {
+                break;
+            }
+            for (int neighbor : neighbors(closest.node(), level)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float d = distance(query, neighbor);
+                if (results.size() < ef || d < results.peek().distance()) {
+                    Candidate candidate = new Candidate(neighbor, d);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Candidate::distance));
+        return sorted;
+    }
+
+    private int[] neighbors(int node, int level) {
+        if (level > 0) {
+            return nodes.get(node).upper[level - 1];
+        }
+        IntBuffer graph = level0.get(segment(node));
+        int base = slot(node) * (m0 + 1);
+        int[] result = new int[graph.get(base)];
+        graph.get(base + 1, result);
+        return result;
+    }
+
+    private void setNeighbors(int node, int level, int[] neighbors) {
+        if (level > 0) {
+            nodes.get(node).upper[level - 1] = neighbors;
+            journalUpper(node, level, neighbors);
+            return;
+        }
+        IntBuffer graph = level0.get(segment(node));
+        int base = slot(node) * (m0 + 1);
+        graph.put(base, neighbors.length);
+        graph.put(base + 1, neighbors);
+    }
+
+    /**
+     * Add a reverse edge, keeping only the closest maxNeighbors when the list overflows.
+     */
+    private void connect(int node, int newNeighbor, int level, int maxNeighbors) {
+        int[] current = neighbors(node, level);
+        int[] extended = new int[current.length + 1];
+        System.arraycopy(current, 0, extended, 0, current.length);
+        extended[current.length] = newNeighbor;
+        if (extended.length <= maxNeighbors) {
+            setNeighbors(node, level, extended);
+            return;
+        }
+
+        float[] base = vector(node);
+        List<Candidate> candidates = new ArrayList<>(extended.length);
+        for (int neighbor : extended) {
+            candidates.add(new Candidate(neighbor, distance(base, neighbor)));
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::distance));
+        setNeighbors(node, level, closest(candidates, maxNeighbors));
+    }
+
+    private static int[] closest(List<Candidate> sortedCandidates, int limit) {
+        int count = Math.min(limit, sortedCandidates.size());
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = sortedCandidates.get(i).node();
+        }
+        return result;
+    }
+
+    private float[] vector(int node) {
+        float[] vector = new float[dimensions];
+        vectors.get(segment(node)).get(slot(node) * dimensions, vector);
+        return vector;
+    }
+
+    /**
+     * Cosine distance; all stored vectors and queries are unit length, so it is 1 - dot.
+     */
+    private float distance(float[] query, int node) {
+        FloatBuffer segment = vectors.get(segment(node));
+        int offset = slot(node) * dimensions;
+        float dot = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            dot += query[i] * segment.get(offset + i);
+        }
+        return 1f - dot;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = vector.clone();
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    record Hit(String id, String content, Map<String, Object> metadata, float distance) {
+    }
+
+    private record Candidate(int node, float distance) {
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    @FunctionalInterface
+    private interface JournalWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Node {
+        private final String id;
+        private final Map<String, Object> metadata;
+        private final int[][] upper;
+        private final long payloadOffset;
+        private final int payloadLength;
+        private volatile boolean deleted;
+
+        private Node(String id, Map<String, Object> metadata, int[][] upper, long payloadOffset, int payloadLength,
+                     boolean deleted) {
+            this.id = id;
+            this.metadata = metadata;
+            this.upper = upper;
+            this.payloadOffset = payloadOffset;
+            this.payloadLength = payloadLength;
+            this.deleted = deleted;
+        }
+    }
+}
@@ -9,6 +9,45 @@ CREATE TABLE IF NOT EXISTS vector_store (
     embedding vector(768)
 );
 
--- Create index for vector similarity search
-CREATE INDEX IF NOT EXISTS vector_store_embedding_idx
-ON vector_store USING hnsw (embedding vector_cosine_ops);
\ No newline at end of file
+-- The HNSW index over embedding is built by TenantVectorIndexService in the configured
+-- quantization (app.vector-store.quantization)
+
+-- Metadata index for tenant/department filters (jsonpath @@ predicates)
+CREATE INDEX IF NOT EXISTS vector_store_metadata_idx
+ON vector_store USING gin (metadata jsonb_path_ops);
+
+-- Lexical index over chunk tokens (written by CjkBigramTokenizer)
+ALTER TABLE document_chunks ADD COLUMN IF NOT EXISTS search_vector tsvector
+GENERATED ALWAYS AS (array_to_tsvector(string_to_array(coalesce(search_tokens, ''), ' '))) STORED;
+
+CREATE INDEX IF NOT EXISTS document_chunks_search_vector_idx
+ON document_chunks USING gin (search_vector);
+
+-- Keyword search over document title + content tokens
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS search_vector tsvector
+GENERATED ALWAYS AS (array_to_tsvector(string_to_array(coalesce(search_tokens, ''), ' '))) STORED;
+
+CREATE INDEX IF NOT EXISTS documents_search_vector_idx
+ON documents USING gin (search_vector);
+
+-- Ingestion queue: claim scan over claimable jobs in claim order (interactive uploads before
+-- bulk-import files), per-tenant running count
+CREATE INDEX IF NOT EXISTS ingestion_jobs_claim_idx
+ON ingestion_jobs ((bulk_import_id IS NOT NULL), available_at, id)
+WHERE status IN ('QUEUED', 'RUNNING') AND deleted = false;
+
+CREATE INDEX IF NOT EXISTS ingestion_jobs_document_idx
+ON ingestion_jobs (document_id);
+
+-- Streaming answers swept by ActiveGenerationRegistry once their lease lapses
+CREATE INDEX IF NOT EXISTS messages_streaming_lease_idx
+ON messages (lease_until) WHERE status = 'STREAMING';
+
+-- Embeddings reused across uploads, keyed by chunk content hash and embedding model
+CREATE TABLE IF NOT EXISTS chunk_embeddings (
+    content_hash VARCHAR(64) NOT NULL,
+    embedding_model VARCHAR(255) NOT NULL,
+    embedding vector NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (content_hash, embedding_model)
+);
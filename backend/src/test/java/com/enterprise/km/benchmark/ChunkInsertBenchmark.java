@@ -0,0 +1,142 @@
+package com.enterprise.km.benchmark;
+
+import com.enterprise.km.model.DocumentChunk;
+import com.enterprise.km.service.DocumentChunkWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Chunks/s for ingesting one document: one INSERT ... RETURNING id per chunk (what
+ * repository.save() does with IDENTITY ids) against DocumentChunkWriter batches of
+ * app.ingestion.batch-size. Each round runs in a transaction that is rolled back, so it can
+ * point at a scratch copy of the application database once the schema exists.
+ *
+ * <pre>
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *       -Dbench.url='jdbc:postgresql://localhost:5432/knowledge_mgmt?reWriteBatchedInserts=true' \
+ *       com.enterprise.km.benchmark.ChunkInsertBenchmark
+ * </pre>
+ * Run it once more without reWriteBatchedInserts to see how much of the gain is the driver
+ * folding each batch into multi-row INSERTs.
+ */
+public class ChunkInsertBenchmark {
+
+    private static final int CHUNKS = Integer.getInteger("bench.chunks", 2000);
+    private static final int BATCH_SIZE = Integer.getInteger("bench.batch-size", 64);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 9);
+
+    private static final String PER_ROW_SQL = """
+            INSERT INTO document_chunks (document_id, content, chunk_index, chunk_size, vector_id,
+                content_hash, search_tokens, created_at, updated_at, deleted)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, false)
+            RETURNING id
+            """;
+
+    public static void main(String[] args) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                System.getProperty("bench.url", "jdbc:postgresql://localhost:5432/knowledge_mgmt?reWriteBatchedInserts=true"),
+                System.getProperty("bench.user", "postgres"),
+                System.getProperty("bench.password", "postgres"));
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        DocumentChunkWriter writer = new DocumentChunkWriter(jdbcTemplate, new SimpleMeterRegistry());
+
+        System.out.printf("%d chunks per document, batch size %d, %s%n", CHUNKS, BATCH_SIZE,
+                dataSource.getUrl());
+        double[] perRowRates = new double[ROUNDS];
+        double[] batchedRates = new double[ROUNDS];
+        for (int round = 0; round <= ROUNDS; round++) {
+            // Round 0 warms up the JIT, the driver's statement cache and the table's pages
+            double perRow = run(transactionTemplate, jdbcTemplate, (documentId, chunks) -> {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                for (DocumentChunk chunk : chunks) {
+                    jdbcTemplate.queryForObject(PER_ROW_SQL, Long.class, documentId, chunk.getContent(),
+                            chunk.getChunkIndex(), chunk.getChunkSize(), chunk.getVectorId(), chunk.getContentHash(),
+                            chunk.getSearchTokens(), now, now);
+                }
+            });
+            double batched = run(transactionTemplate, jdbcTemplate, (documentId, chunks) -> {
+                for (int from = 0; from < chunks.size(); from += BATCH_SIZE) {
+                    writer.insert(documentId, chunks.subList(from, Math.min(from + BATCH_SIZE, chunks.size())));
+                }
+            });
+            if (round > 0) {
+                perRowRates[round - 1] = perRow;
+                batchedRates[round - 1] = batched;
+                System.out.printf("round %d: per-row %.0f chunks/s, batched %.0f chunks/s%n", round, perRow, batched);
+            }
+        }
+        double perRow = median(perRowRates);
+        double batched = median(batchedRates);
+        System.out.printf("median: per-row %.0f chunks/s, batched %.0f chunks/s (%.1fx)%n", perRow, batched,
+                batched / perRow);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static double run(TransactionTemplate transactionTemplate, JdbcTemplate jdbcTemplate, Insert insert) {
+        Double rate = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            Long documentId = scratchDocument(jdbcTemplate);
+            List<DocumentChunk> chunks = chunks();
+            long started = System.nanoTime();
+            insert.run(documentId, chunks);
+            return CHUNKS / ((System.nanoTime() - started) / 1e9);
+        });
+        return rate != null ? rate : 0;
+    }
+
+    private static Long scratchDocument(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("""
+                INSERT INTO tenants (tenant_id, name, active, created_at, deleted)
+                VALUES ('bench', 'bench', true, now(), false)
+                ON CONFLICT (tenant_id) DO NOTHING
+                """);
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO documents (title, file_name, file_type, file_size, tenant_id, status, created_at, deleted)
+                VALUES ('bench', 'bench.txt', 'text/plain', 1000, (SELECT id FROM tenants WHERE tenant_id = 'bench'),
+                        'PROCESSING', now(), false)
+                RETURNING id
+                """, Long.class);
+    }
+
+    /**
+     * Chunks shaped like real ones: about 1000 characters of mixed text with its search tokens.
+     */
+    private static List<DocumentChunk> chunks() {
+        List<DocumentChunk> chunks = new ArrayList<>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            String content = ("第" + i + "段：员工报销流程需在费用系统中提交申请，经主管审批后由财务处理。"
+                    + "Expense claims are reviewed within 30 days. ").repeat(12);
+            chunks.add(DocumentChunk.builder()
+                    .content(content)
+                    .chunkIndex(i)
+                    .chunkSize(content.length())
+                    .vectorId(UUID.randomUUID().toString())
+                    .contentHash(UUID.randomUUID().toString().replace("-", "") + "00000000000000000000000000000000")
+                    .searchTokens("员工 工报 报销 销流 流程 expense claims reviewed " + i)
+                    .build());
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    private interface Insert {
+        void run(Long documentId, List<DocumentChunk> chunks);
+    }
+}
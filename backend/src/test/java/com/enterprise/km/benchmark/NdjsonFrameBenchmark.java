@@ -0,0 +1,104 @@
+package com.enterprise.km.benchmark;
+
+import com.enterprise.km.controller.NdjsonFrameWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per streamed answer for the /chat/stream content frames: the previous
+ * concatenation plus chained replace() escaping, one frame per token, against
+ * NdjsonFrameWriter with and without coalescing. The answer is 600 model tokens of mixed
+ * Chinese and English text with quotes and newlines.
+ *
+ * Compare gc.alloc.rate.norm (bytes per answer) in the output:
+ * <pre>
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.enterprise.km.benchmark.NdjsonFrameBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NdjsonFrameBenchmark {
+
+    private static final String[] PIECES = {
+            "根据", "公司", "的", "报销", "流程", "，", "员工", "需要", "在", "\"费用", "系统\"", "中",
+            "提交", "申请", "。", "\n", "The", " expense", " policy", " says", " \"", "within", " 30",
+            " days", "\".", "\n\n", "1.", " 填写", "单据", "\t", "2.", " 主管", "审批", "\\", "。"
+    };
+
+    private final String[] tokens = new String[600];
+    private NdjsonFrameWriter frames;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = PIECES[i % PIECES.length];
+        }
+        frames = new NdjsonFrameWriter(new ObjectMapper());
+        ReflectionTestUtils.setField(frames, "maxChars", 64);
+        ReflectionTestUtils.setField(frames, "maxDelay", Duration.ofMillis(30));
+    }
+
+    @Benchmark
+    public void concatenatedFramePerToken(Blackhole blackhole) {
+        for (String token : tokens) {
+            blackhole.consume("{\"type\":\"content\",\"content\":\"" + escapeJson(token) + "\"}\n");
+        }
+    }
+
+    @Benchmark
+    public void writerFramePerToken(Blackhole blackhole) {
+        for (String token : tokens) {
+            blackhole.consume(frames.content(token));
+        }
+    }
+
+    @Benchmark
+    public void writerCoalescedFrames(Blackhole blackhole) {
+        frames.coalesce(Flux.fromArray(tokens))
+                .map(frames::content)
+                .subscribe(blackhole::consume);
+    }
+
+    /**
+     * The escaping ConversationController used before NdjsonFrameWriter.
+     */
+    private static String escapeJson(String str) {
+        if (str == null) return "";
+        return str.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NdjsonFrameBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+package com.enterprise.km.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NdjsonFrameWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private NdjsonFrameWriter frames;
+
+    @BeforeEach
+    void setUp() {
+        frames = new NdjsonFrameWriter(objectMapper);
+        ReflectionTestUtils.setField(frames, "maxChars", 5);
+        ReflectionTestUtils.setField(frames, "maxDelay", Duration.ofSeconds(10));
+    }
+
+    @Test
+    void framesAreOneJsonObjectPerLine() throws Exception {
+        String content = frames.content("引号\"、反斜杠\\\n换行\t");
+        String start = frames.start(1L, null, 3L);
+        String error = frames.error(429, null);
+
+        assertThat(content).endsWith("\n").doesNotContain("\n\n");
+        assertThat(content.indexOf('\n')).isEqualTo(content.length() - 1);
+        assertThat(objectMapper.readTree(content).get("content").asText()).isEqualTo("引号\"、反斜杠\\\n换行\t");
+        JsonNode startNode = objectMapper.readTree(start);
+        assertThat(startNode.get("type").asText()).isEqualTo("start");
+        assertThat(startNode.has("messageId")).isFalse();
+        assertThat(startNode.get("assistantMessageId").asLong()).isEqualTo(3L);
+        assertThat(objectMapper.readTree(error).get("code").asInt()).isEqualTo(429);
+        assertThat(objectMapper.readTree(error).get("message").asText()).isEmpty();
+    }
+
+    @Test
+    void largeFrameDoesNotLeakIntoTheNext() throws Exception {
+        frames.content("x".repeat(100_000));
+
+        assertThat(objectMapper.readTree(frames.done(7L)).get("messageId").asLong()).isEqualTo(7L);
+    }
+
+    @Test
+    void tokensAreMergedUpToMaxChars() {
+        List<String> chunks = frames.coalesce(Flux.just("ab", "cd", "ef", "g")).collectList().block();
+
+        assertThat(chunks).containsExactly("abcdef", "g");
+    }
+
+    @Test
+    void pendingTokensAreFlushedAfterMaxDelay() throws InterruptedException {
+        ReflectionTestUtils.setField(frames, "maxDelay", Duration.ofMillis(20));
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        frames.coalesce(tokens.asFlux()).subscribe(chunks::add);
+
+        tokens.tryEmitNext("a");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (chunks.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(chunks).containsExactly("a");
+
+        tokens.tryEmitNext("b");
+        tokens.tryEmitComplete();
+        assertThat(chunks).containsExactly("a", "b");
+    }
+
+    @Test
+    void pendingTokensAreFlushedBeforeAnError() {
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        Flux<String> tokens = Flux.concat(Flux.just("ab"), Flux.error(new IllegalStateException("model failed")));
+
+        assertThatThrownBy(() -> frames.coalesce(tokens).doOnNext(chunks::add).blockLast())
+                .hasMessageContaining("model failed");
+        assertThat(chunks).containsExactly("ab");
+    }
+
+    @Test
+    void textSurvivesRacingTimerFlushes() {
+        ReflectionTestUtils.setField(frames, "maxChars", 64);
+        ReflectionTestUtils.setField(frames, "maxDelay", Duration.ofMillis(1));
+        List<String> tokens = IntStream.range(0, 5000).mapToObj(i -> i + ",").toList();
+
+        List<String> chunks = frames.coalesce(Flux.fromIterable(tokens)
+                        .delayElements(Duration.ofNanos(1), Schedulers.parallel()))
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(String.join("", chunks)).isEqualTo(String.join("", tokens));
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.length()).isLessThan(64 + 6));
+    }
+}
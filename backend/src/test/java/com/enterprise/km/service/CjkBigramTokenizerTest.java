@@ -0,0 +1,57 @@
+package com.enterprise.km.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CjkBigramTokenizerTest {
+
+    @Test
+    void cjkRunsBecomeOverlappingBigrams() {
+        assertThat(CjkBigramTokenizer.tokenize("报销流程")).containsExactly("报销", "销流", "流程");
+    }
+
+    @Test
+    void singleCjkCharacterIsKept() {
+        assertThat(CjkBigramTokenizer.tokenize("税")).containsExactly("税");
+    }
+
+    @Test
+    void latinWordsAreLowercasedAndSplitFromCjk() {
+        assertThat(CjkBigramTokenizer.tokenize("VPN配置Guide v2"))
+                .containsExactly("vpn", "配置", "guide", "v2");
+    }
+
+    @Test
+    void fullWidthFormsAreNormalized() {
+        assertThat(CjkBigramTokenizer.tokenize("ＡＢＣ１２３")).containsExactly("abc123");
+    }
+
+    @Test
+    void tokensAreDistinctInFirstOccurrenceOrder() {
+        assertThat(CjkBigramTokenizer.tokenize("流程 报销 流程")).containsExactly("流程", "报销");
+    }
+
+    @Test
+    void emptyTextHasNoTokensAndNoQuery() {
+        assertThat(CjkBigramTokenizer.tokenize("")).isEmpty();
+        assertThat(CjkBigramTokenizer.tokenize(null)).isEmpty();
+        assertThat(CjkBigramTokenizer.toTsQuery("!!")).isNull();
+        assertThat(CjkBigramTokenizer.toAllTsQuery(" ")).isNull();
+    }
+
+    @Test
+    void keywordQueryRequiresEveryToken() {
+        assertThat(CjkBigramTokenizer.toAllTsQuery("报销流程")).isEqualTo("'报销' & '销流' & '流程'");
+    }
+
+    @Test
+    void recallQueryAcceptsAnyToken() {
+        assertThat(CjkBigramTokenizer.toTsQuery("报销流程")).isEqualTo("'报销' | '销流' | '流程'");
+    }
+
+    @Test
+    void indexTextIsSpaceSeparated() {
+        assertThat(CjkBigramTokenizer.toIndexText("年假申请 form")).isEqualTo("年假 假申 申请 form");
+    }
+}
@@ -0,0 +1,94 @@
+package com.enterprise.km.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextAssemblerTest {
+
+    private final ContextAssembler assembler = new ContextAssembler();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(assembler, "maxTokens", 2000);
+        ReflectionTestUtils.setField(assembler, "mmrLambda", 0.7);
+        ReflectionTestUtils.setField(assembler, "dedupSimilarity", 0.85);
+    }
+
+    @Test
+    void consecutiveChunksOfADocumentAreJoinedLineByLineInChunkOrder() {
+        String context = assembler.assemble(List.of(
+                chunk(1L, 1, "second part of the policy", 0.1),
+                chunk(1L, 0, "first part of the handbook", 0.2)));
+
+        assertThat(context).isEqualTo("first part of the handbook\nsecond part of the policy");
+    }
+
+    @Test
+    void repeatedTextAtAChunkBoundaryIsKept() {
+        String boundary = "Submit the form to finance before Friday.";
+        String context = assembler.assemble(List.of(
+                chunk(1L, 0, "Travel claims. " + boundary, 0.1),
+                chunk(1L, 1, boundary + " Late claims are rejected.", 0.2)));
+
+        assertThat(context).isEqualTo("Travel claims. " + boundary + "\n" + boundary + " Late claims are rejected.");
+    }
+
+    @Test
+    void gapsAndOtherDocumentsStartNewSectionsOrderedByBestRank() {
+        String context = assembler.assemble(List.of(
+                chunk(2L, 5, "vpn setup requires the client certificate", 0.1),
+                chunk(1L, 0, "annual leave accrues monthly", 0.2),
+                chunk(1L, 3, "unused leave expires in march", 0.3)));
+
+        assertThat(context).isEqualTo("vpn setup requires the client certificate\n\n"
+                + "annual leave accrues monthly\n\nunused leave expires in march");
+    }
+
+    @Test
+    void nearDuplicatesAreDropped() {
+        String context = assembler.assemble(List.of(
+                chunk(1L, 0, "expense reports are due on the fifth working day", 0.1),
+                chunk(2L, 0, "expense reports are due on the fifth working day!", 0.15)));
+
+        assertThat(context).isEqualTo("expense reports are due on the fifth working day");
+    }
+
+    @Test
+    void selectionStopsAtTheTokenBudgetAndTruncatesAnOversizedBestChunk() {
+        ReflectionTestUtils.setField(assembler, "maxTokens", 10);
+        String longChunk = "x".repeat(80);
+
+        assertThat(assembler.assemble(List.of(chunk(1L, 0, longChunk, 0.1), chunk(2L, 0, "short note", 0.2))))
+                .isEqualTo("x".repeat(40));
+        assertThat(assembler.assemble(List.of(chunk(1L, 0, "short note", 0.1), chunk(2L, 0, longChunk, 0.2))))
+                .isEqualTo("short note");
+        assertThat(assembler.assemble(List.of(chunk(1L, 0, "报销".repeat(8), 0.1)))).isEqualTo("报销".repeat(5));
+    }
+
+    @Test
+    void fusedRankOutweighsRawDistance() {
+        ReflectionTestUtils.setField(assembler, "maxTokens", 8);
+        // Hybrid order: a weak vector hit fused first, then a lexical-only hit without a distance
+        Document fusedFirst = chunk(1L, 0, "reimbursement policy for travel", 0.6);
+        Document lexicalOnly = new Document("2-0", "travel allowance table",
+                new HashMap<>(Map.of(VectorMetadata.DOCUMENT_ID, 2L, VectorMetadata.CHUNK_INDEX, 0)));
+
+        assertThat(assembler.assemble(List.of(fusedFirst, lexicalOnly))).isEqualTo("reimbursement policy for travel");
+    }
+
+    private static Document chunk(Long documentId, int chunkIndex, String content, double distance) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(VectorMetadata.DOCUMENT_ID, documentId);
+        metadata.put(VectorMetadata.CHUNK_INDEX, chunkIndex);
+        metadata.put("distance", distance);
+        return new Document(documentId + "-" + chunkIndex, content, metadata);
+    }
+}
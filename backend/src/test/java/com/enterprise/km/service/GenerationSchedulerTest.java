@@ -0,0 +1,241 @@
+package com.enterprise.km.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GenerationSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void grantsImmediatelyWhileSlotsAreFree() {
+        GenerationScheduler scheduler = scheduler(2, "", Duration.ofSeconds(30));
+
+        GenerationScheduler.Admission first = scheduler.admit("a");
+        GenerationScheduler.Admission second = scheduler.admit("b");
+        GenerationScheduler.Admission third = scheduler.admit("a");
+
+        assertThat(first.position()).isZero();
+        assertThat(second.position()).isZero();
+        assertThat(third.position()).isEqualTo(1);
+        assertThat(third.granted()).isNotDone();
+        first.release();
+        assertThat(third.granted()).isCompleted();
+        assertThat(active()).isEqualTo(2);
+    }
+
+    @Test
+    void equalWeightTenantsAlternate() {
+        GenerationScheduler scheduler = scheduler(1, "", Duration.ofSeconds(30));
+        GenerationScheduler.Admission holder = scheduler.admit("a");
+        List<String> order = new ArrayList<>();
+        List<GenerationScheduler.Admission> granted = new ArrayList<>();
+        for (String name : List.of("a1", "a2", "a3", "b1", "b2")) {
+            track(scheduler, name, order, granted);
+        }
+
+        drain(holder, granted);
+
+        assertThat(order).containsExactly("a1", "b1", "a2", "b2", "a3");
+    }
+
+    @Test
+    void heavierTenantGetsProportionallyMoreSlots() {
+        GenerationScheduler scheduler = scheduler(1, "a=2", Duration.ofSeconds(30));
+        GenerationScheduler.Admission holder = scheduler.admit("a");
+        List<String> order = new ArrayList<>();
+        List<GenerationScheduler.Admission> granted = new ArrayList<>();
+        for (String name : List.of("a1", "a2", "a3", "a4", "b1", "b2")) {
+            track(scheduler, name, order, granted);
+        }
+
+        drain(holder, granted);
+
+        assertThat(order).containsExactly("a1", "b1", "a2", "a3", "b2", "a4");
+    }
+
+    @Test
+    void backgroundWorkGetsASmallerShareThanChat() throws InterruptedException {
+        GenerationScheduler scheduler = scheduler(1, "", Duration.ofSeconds(30));
+        GenerationScheduler.Admission holder = scheduler.admit("a");
+        List<String> order = new ArrayList<>();
+        List<GenerationScheduler.Admission> granted = new ArrayList<>();
+        for (String name : List.of("a1", "a2", "a3", "a4", "a5")) {
+            track(scheduler, name, order, granted);
+        }
+        ExecutorService background = Executors.newFixedThreadPool(2);
+        for (String name : List.of("s1", "s2")) {
+            background.submit(() -> scheduler.runBackground("a", () -> {
+                synchronized (order) {
+                    order.add(name);
+                }
+                return null;
+            }));
+            waitForQueueDepth(name.equals("s1") ? 6 : 7);
+        }
+
+        // Summaries give their slot back when the supplier returns; chat slots are released here
+        holder.release();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (order.size() < 7 && System.nanoTime() < deadline) {
+            GenerationScheduler.Admission next = null;
+            synchronized (order) {
+                if (!granted.isEmpty()) {
+                    next = granted.remove(0);
+                }
+            }
+            if (next != null) {
+                next.release();
+            } else {
+                Thread.sleep(2);
+            }
+        }
+        background.shutdown();
+
+        assertThat(order).containsExactly("a1", "s1", "a2", "a3", "a4", "a5", "s2");
+    }
+
+    @Test
+    void fullTenantQueueIsRejected() {
+        GenerationScheduler scheduler = new GenerationScheduler(1, 2, Duration.ofSeconds(30), "", 0.25,
+                meterRegistry);
+        scheduler.admit("a");
+        scheduler.admit("a");
+        scheduler.admit("a");
+
+        assertThatThrownBy(() -> scheduler.admit("a")).isInstanceOf(GenerationRejectedException.class);
+        assertThat(scheduler.admit("b").position()).isEqualTo(3);
+    }
+
+    @Test
+    void expiredWaiterIsRemovedAndNeverGranted() throws Exception {
+        GenerationScheduler scheduler = scheduler(1, "", Duration.ofMillis(50));
+        GenerationScheduler.Admission holder = scheduler.admit("a");
+        GenerationScheduler.Admission waiter = scheduler.admit("b");
+
+        assertThatThrownBy(() -> waiter.granted().get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(GenerationRejectedException.class);
+        assertThat(queueDepth()).isZero();
+
+        holder.release();
+        waiter.release();
+        assertThat(active()).isZero();
+        assertThat(scheduler.admit("c").position()).isZero();
+    }
+
+    @Test
+    void releasingAQueuedAdmissionLeavesTheQueue() {
+        GenerationScheduler scheduler = scheduler(1, "", Duration.ofSeconds(30));
+        GenerationScheduler.Admission holder = scheduler.admit("a");
+        GenerationScheduler.Admission cancelled = scheduler.admit("b");
+        GenerationScheduler.Admission next = scheduler.admit("c");
+
+        cancelled.release();
+        assertThat(queueDepth()).isEqualTo(1);
+        holder.release();
+
+        assertThat(cancelled.granted()).isNotDone();
+        assertThat(next.granted()).isCompleted();
+        assertThat(active()).isEqualTo(1);
+    }
+
+    @Test
+    void releaseIsIdempotent() {
+        GenerationScheduler scheduler = scheduler(1, "", Duration.ofSeconds(30));
+        GenerationScheduler.Admission holder = scheduler.admit("a");
+        GenerationScheduler.Admission waiter = scheduler.admit("b");
+
+        holder.release();
+        holder.release();
+
+        assertThat(waiter.granted()).isCompleted();
+        assertThat(active()).isEqualTo(1);
+        waiter.release();
+        assertThat(active()).isZero();
+    }
+
+    @Test
+    void concurrentAdmitExpireAndReleaseKeepTheCountsConsistent() throws InterruptedException {
+        GenerationScheduler scheduler = scheduler(2, "t0=2", Duration.ofMillis(3));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            String tenant = "t" + (t % 3);
+            threads.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    try {
+                        scheduler.run(tenant, () -> {
+                            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                            Thread.onSpinWait();
+                            running.decrementAndGet();
+                            return null;
+                        });
+                    } catch (GenerationRejectedException e) {
+                        // expected under this much contention
+                    }
+                }
+            });
+        }
+        threads.shutdown();
+        assertThat(threads.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+        assertThat(active()).isZero();
+        assertThat(queueDepth()).isZero();
+    }
+
+    private GenerationScheduler scheduler(int maxConcurrent, String weights, Duration maxWait) {
+        return new GenerationScheduler(maxConcurrent, 20, maxWait, weights, 0.25, meterRegistry);
+    }
+
+    /**
+     * Queue an admission for the tenant named by the first letter; records the grant order.
+     */
+    private static void track(GenerationScheduler scheduler, String name, List<String> order,
+                              List<GenerationScheduler.Admission> granted) {
+        GenerationScheduler.Admission admission = scheduler.admit(name.substring(0, 1));
+        admission.granted().thenRun(() -> {
+            synchronized (order) {
+                order.add(name);
+                granted.add(admission);
+            }
+        });
+    }
+
+    private static void drain(GenerationScheduler.Admission holder, List<GenerationScheduler.Admission> granted) {
+        holder.release();
+        for (int i = 0; i < granted.size(); i++) {
+            granted.get(i).release();
+        }
+    }
+
+    private void waitForQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queueDepth() < depth && System.nanoTime() < deadline) {
+            Thread.sleep(2);
+        }
+        assertThat(queueDepth()).isEqualTo(depth);
+    }
+
+    private int active() {
+        return (int) meterRegistry.get("km.llm.active").gauge().value();
+    }
+
+    private int queueDepth() {
+        return (int) meterRegistry.get("km.llm.queue.depth").gauge().value();
+    }
+}
@@ -0,0 +1,51 @@
+package com.enterprise.km.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetrievalServiceTest {
+
+    @Test
+    void chunkFoundByBothSearchesOutranksSingleListHits() {
+        List<Document> vector = List.of(doc("a"), doc("b"), doc("c"));
+        List<Document> lexical = List.of(doc("x"), doc("c"));
+
+        List<Document> fused = RetrievalService.reciprocalRankFusion(List.of(vector, lexical), 60, 10);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("c", "a", "x", "b");
+    }
+
+    @Test
+    void equalScoresKeepFirstSeenOrder() {
+        List<Document> vector = List.of(doc("a"), doc("b"));
+        List<Document> lexical = List.of(doc("b"), doc("a"));
+
+        List<Document> fused = RetrievalService.reciprocalRankFusion(List.of(vector, lexical), 60, 10);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("a", "b");
+    }
+
+    @Test
+    void resultIsCutToTopKAndKeepsTheFirstInstanceOfADocument() {
+        Document vectorHit = doc("a");
+        List<Document> fused = RetrievalService.reciprocalRankFusion(
+                List.of(List.of(vectorHit, doc("b"), doc("c")), List.of(doc("a"))), 60, 2);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("a", "b");
+        assertThat(fused.get(0)).isSameAs(vectorHit);
+    }
+
+    @Test
+    void emptyRankingsFuseToNothing() {
+        assertThat(RetrievalService.reciprocalRankFusion(List.of(List.of(), List.of()), 60, 5)).isEmpty();
+    }
+
+    private static Document doc(String id) {
+        return new Document(id, "content " + id, Map.of());
+    }
+}
@@ -0,0 +1,141 @@
+package com.enterprise.km.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingChunkerTest {
+
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry()
+            .getEncoding(EncodingType.CL100K_BASE);
+
+    @Test
+    void shortTextIsHeldUntilFinish() {
+        List<String> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(chunks::add);
+
+        append(chunker, "  A short paragraph that fits in one window.  ");
+        assertThat(chunks).isEmpty();
+
+        chunker.finish();
+        assertThat(chunks).containsExactly("A short paragraph that fits in one window.");
+    }
+
+    @Test
+    void tinyFragmentsAreDropped() {
+        List<String> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(chunks::add);
+
+        append(chunker, " ok. ");
+        chunker.finish();
+        chunker.finish();
+
+        assertThat(chunks).isEmpty();
+    }
+
+    @Test
+    void longTextIsCutIntoWindowsAtSentenceEnds() {
+        String text = sentences(400);
+
+        List<String> chunks = chunk(text, text.length());
+
+        assertThat(chunks).hasSizeGreaterThan(3);
+        for (String chunk : chunks) {
+            assertThat(ENCODING.countTokens(chunk)).isLessThanOrEqualTo(500);
+            assertThat(chunk).endsWith(".");
+        }
+        assertThat(strip(String.join("", chunks))).isEqualTo(strip(text));
+    }
+
+    @Test
+    void windowWithoutPunctuationIsCutAtTheTokenLimit() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("word").append(i).append(' ');
+        }
+
+        List<String> chunks = chunk(text.toString(), text.length());
+
+        assertThat(chunks).hasSizeGreaterThan(2);
+        assertThat(ENCODING.countTokens(chunks.get(0))).isBetween(490, 500);
+        assertThat(strip(String.join("", chunks))).isEqualTo(strip(text.toString()));
+    }
+
+    @Test
+    void multiByteCharactersAreNeverSplit() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            text.append("企业知识库检索增强生成😀𠀀");
+        }
+
+        List<String> chunks = chunk(text.toString(), text.length());
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        for (String chunk : chunks) {
+            assertThat(chunk).doesNotContain("�");
+            assertThat(Character.isLowSurrogate(chunk.charAt(0))).isFalse();
+            assertThat(Character.isHighSurrogate(chunk.charAt(chunk.length() - 1))).isFalse();
+            assertThat(ENCODING.countTokens(chunk)).isLessThanOrEqualTo(500);
+        }
+        assertThat(String.join("", chunks)).isEqualTo(text.toString());
+    }
+
+    @Test
+    void chunksDoNotDependOnHowTextIsAppended() {
+        String text = sentences(150) + "\n结尾的中文段落，没有句号" + "测试".repeat(300);
+
+        List<String> whole = chunk(text, text.length());
+        List<String> bySeven = chunk(text, 7);
+        List<String> byChar = chunk(text, 1);
+
+        assertThat(bySeven).isEqualTo(whole);
+        assertThat(byChar).isEqualTo(whole);
+    }
+
+    @Test
+    void finishFlushesEveryRemainingWindow() {
+        String text = sentences(60);
+        List<String> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(chunks::add);
+
+        append(chunker, text);
+        int beforeFinish = chunks.size();
+        chunker.finish();
+
+        assertThat(chunks.size()).isGreaterThan(beforeFinish);
+        assertThat(strip(String.join("", chunks))).isEqualTo(strip(text));
+    }
+
+    private static List<String> chunk(String text, int step) {
+        List<String> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(chunks::add);
+        char[] chars = text.toCharArray();
+        for (int offset = 0; offset < chars.length; offset += step) {
+            chunker.append(chars, offset, Math.min(step, chars.length - offset));
+        }
+        chunker.finish();
+        return chunks;
+    }
+
+    private static void append(StreamingChunker chunker, String text) {
+        chunker.append(text.toCharArray(), 0, text.length());
+    }
+
+    private static String sentences(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("Sentence number ").append(i).append(" describes the document retention policy. ");
+        }
+        return text.toString();
+    }
+
+    private static String strip(String text) {
+        return text.replaceAll("\\s+", "");
+    }
+}
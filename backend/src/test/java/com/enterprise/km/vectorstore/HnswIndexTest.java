@@ -0,0 +1,227 @@
+package com.enterprise.km.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void recallAgainstBruteForce() throws IOException {
+        float[][] vectors = randomVectors(2000, new Random(1));
+        try (HnswIndex index = open()) {
+            addAll(index, vectors);
+            assertThat(recallAt10(index, vectors, Set.of(), new Random(2))).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void tombstonesAreNeverReturnedAndSurviveReopen() throws IOException {
+        float[][] vectors = randomVectors(1000, new Random(3));
+        Set<Integer> deleted = new HashSet<>();
+        try (HnswIndex index = open()) {
+            addAll(index, vectors);
+            for (int i = 0; i < vectors.length; i += 2) {
+                assertThat(index.delete("id" + i)).isTrue();
+                deleted.add(i);
+            }
+            assertThat(index.delete("id0")).isFalse();
+            index.flush();
+        }
+
+        try (HnswIndex index = open()) {
+            assertThat(index.size()).isEqualTo(500);
+            assertThat(index.tombstoneRatio()).isEqualTo(0.5);
+            List<HnswIndex.Hit> hits = index.search(vectors[0], 10, 64, metadata -> true);
+            assertThat(hits).hasSize(10).noneMatch(hit -> deleted.contains(Integer.parseInt(hit.id().substring(2))));
+            assertThat(recallAt10(index, vectors, deleted, new Random(4))).isGreaterThanOrEqualTo(0.9);
+        }
+    }
+
+    @Test
+    void replacingAnIdTombstonesTheOldNode() throws IOException {
+        float[][] vectors = randomVectors(2, new Random(5));
+        try (HnswIndex index = open()) {
+            index.add("a", "old", Map.of(), vectors[0]);
+            index.add("a", "new", Map.of(), vectors[1]);
+
+            assertThat(index.size()).isEqualTo(1);
+            List<HnswIndex.Hit> hits = index.search(vectors[0], 5, 16, metadata -> true);
+            assertThat(hits).singleElement().satisfies(hit -> assertThat(hit.content()).isEqualTo("new"));
+        }
+    }
+
+    @Test
+    void filterIsAppliedWhileSearching() throws IOException {
+        float[][] vectors = randomVectors(500, new Random(6));
+        try (HnswIndex index = open()) {
+            for (int i = 0; i < vectors.length; i++) {
+                index.add("id" + i, "text " + i, Map.of("departmentId", i % 10), vectors[i]);
+            }
+            List<HnswIndex.Hit> hits = index.search(vectors[3], 5, 16,
+                    metadata -> Integer.valueOf(3).equals(metadata.get("departmentId")));
+            assertThat(hits).hasSize(5).allMatch(hit -> hit.metadata().get("departmentId").equals(3));
+            assertThat(hits.get(0).id()).isEqualTo("id3");
+        }
+    }
+
+    @Test
+    void compactionRemovesDeletedPayloadsAndKeepsLiveNodes() throws IOException {
+        float[][] vectors = randomVectors(1000, new Random(7));
+        Set<Integer> deleted = new HashSet<>();
+        try (HnswIndex index = open()) {
+            addAll(index, vectors);
+            for (int i = 0; i < vectors.length; i++) {
+                if (i % 4 != 0) {
+                    index.delete("id" + i);
+                    deleted.add(i);
+                }
+            }
+            index.flush();
+            long payloadsBefore = Files.size(dataDir.resolve("t").resolve("payloads.seg"));
+
+            assertThat(index.compact()).isTrue();
+
+            assertThat(index.tombstoneRatio()).isZero();
+            assertThat(index.size()).isEqualTo(250);
+            assertThat(Files.size(dataDir.resolve("t").resolve("payloads.seg"))).isLessThan(payloadsBefore / 2);
+            assertThat(index.search(vectors[4], 1, 16, metadata -> true).get(0).content()).isEqualTo("text 4");
+            assertThat(index.compact()).isFalse();
+        }
+        try (Stream<Path> dirs = Files.list(dataDir)) {
+            assertThat(dirs.map(dir -> dir.getFileName().toString())).containsExactly("t");
+        }
+        try (HnswIndex index = open()) {
+            assertThat(index.size()).isEqualTo(250);
+            assertThat(recallAt10(index, vectors, deleted, new Random(8))).isGreaterThanOrEqualTo(0.9);
+        }
+    }
+
+    @Test
+    void nodesSpanSeveralSegments() throws IOException {
+        // 16 KB segments hold 64 nodes at 32 dimensions, so 500 vectors fill eight of them
+        float[][] vectors = randomVectors(500, new Random(10));
+        try (HnswIndex index = openSegmented()) {
+            addAll(index, vectors);
+            assertThat(recallAt10(index, vectors, Set.of(), new Random(11))).isGreaterThanOrEqualTo(0.95);
+
+            index.add("id63", "replaced", Map.of(), vectors[63]);
+            index.flush();
+            assertThat(index.size()).isEqualTo(500);
+            assertThat(index.search(vectors[63], 1, 16, metadata -> true).get(0).content()).isEqualTo("replaced");
+        }
+
+        try (HnswIndex index = openSegmented()) {
+            assertThat(index.size()).isEqualTo(500);
+            assertThat(index.search(vectors[64], 1, 16, metadata -> true).get(0).content()).isEqualTo("text 64");
+            assertThat(recallAt10(index, vectors, Set.of(), new Random(12))).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void partialJournalRecordIsDroppedOnOpen() throws IOException {
+        float[][] vectors = randomVectors(100, new Random(9));
+        try (HnswIndex index = open()) {
+            addAll(index, vectors);
+        }
+        try (FileChannel journal = FileChannel.open(dataDir.resolve("t").resolve("nodes.log"),
+                StandardOpenOption.WRITE)) {
+            journal.truncate(journal.size() - 3);
+        }
+
+        try (HnswIndex index = open()) {
+            assertThat(index.size()).isBetween(99, 100);
+            index.add("extra", "extra", Map.of(), vectors[0]);
+            index.flush();
+        }
+        try (HnswIndex index = open()) {
+            assertThat(index.search(vectors[0], 2, 16, metadata -> true))
+                    .extracting(HnswIndex.Hit::id).contains("extra");
+        }
+    }
+
+    private HnswIndex open() throws IOException {
+        return HnswIndex.open(dataDir.resolve("t"), DIMENSIONS, 16, 100, objectMapper);
+    }
+
+    private HnswIndex openSegmented() throws IOException {
+        return HnswIndex.open(dataDir.resolve("t"), DIMENSIONS, 16, 100, objectMapper, 16 * 1024);
+    }
+
+    private static void addAll(HnswIndex index, float[][] vectors) throws IOException {
+        for (int i = 0; i < vectors.length; i++) {
+            index.add("id" + i, "text " + i, Map.of("n", i), vectors[i]);
+            if (i % 64 == 63) {
+                index.flush();
+            }
+        }
+        index.flush();
+    }
+
+    private static double recallAt10(HnswIndex index, float[][] vectors, Set<Integer> deleted, Random random) {
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomVectors(1, random)[0];
+            List<Integer> truth = IntStream.range(0, vectors.length).boxed()
+                    .filter(i -> !deleted.contains(i))
+                    .sorted(Comparator.comparingDouble(i -> -cosine(query, vectors[i])))
+                    .limit(10)
+                    .toList();
+            Set<String> hits = new HashSet<>();
+            index.search(query, 10, 64, metadata -> true).forEach(hit -> hits.add(hit.id()));
+            for (int i : truth) {
+                expected++;
+                if (hits.contains("id" + i)) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / expected;
+    }
+
+    private static float[][] randomVectors(int count, Random random) {
+        float[][] vectors = new float[count][DIMENSIONS];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,58 @@
+-- Keyword search at 500k documents (DocumentRepository.searchRanked).
+--
+--   psql -h localhost -U postgres -d knowledge_mgmt -f document-search.sql
+--
+-- Run against a scratch database after the application has created the schema once.
+-- Loads 500k documents for tenant 'bench' whose tokens mix a few very common terms with
+-- rare ones, then times the first page for a common and a rare query. Everything runs in
+-- one transaction that is rolled back at the end.
+
+\timing on
+BEGIN;
+
+INSERT INTO tenants (tenant_id, name, active, created_at, deleted)
+VALUES ('bench', 'bench', true, now(), false)
+ON CONFLICT (tenant_id) DO NOTHING;
+
+INSERT INTO documents (title, file_name, file_type, file_size, tenant_id, status, search_tokens,
+                       created_at, deleted)
+SELECT 'doc ' || g, 'doc' || g || '.txt', 'text/plain', 1000,
+       (SELECT id FROM tenants WHERE tenant_id = 'bench'), 'COMPLETED',
+       -- 流程 in every second document, 报销 in every tenth, one rare token per 1000
+       concat_ws(' ', 'w' || (g % 50000), 'r' || (g % 500),
+                 CASE WHEN g % 2 = 0 THEN '流程' END,
+                 CASE WHEN g % 10 = 0 THEN '报销 销流' END),
+       now(), false
+FROM generate_series(1, 500000) g;
+
+ANALYZE documents;
+
+-- Common: every token of "报销流程" (50k matches), ranked within the newest 5000
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT r.id, r.rank FROM (
+    SELECT c.id, ts_rank(c.search_vector, CAST('''报销'' & ''销流'' & ''流程''' AS tsquery)) AS rank FROM (
+        SELECT d.id, d.search_vector FROM documents d JOIN tenants t ON t.id = d.tenant_id
+        WHERE t.tenant_id = 'bench' AND d.deleted = false
+          AND d.search_vector @@ CAST('''报销'' & ''销流'' & ''流程''' AS tsquery)
+        ORDER BY d.id DESC LIMIT 5000) c) r
+ORDER BY r.rank DESC, r.id DESC LIMIT 21;
+
+-- Rare: one token matching 1000 documents
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT r.id, r.rank FROM (
+    SELECT c.id, ts_rank(c.search_vector, CAST('''r42''' AS tsquery)) AS rank FROM (
+        SELECT d.id, d.search_vector FROM documents d JOIN tenants t ON t.id = d.tenant_id
+        WHERE t.tenant_id = 'bench' AND d.deleted = false
+          AND d.search_vector @@ CAST('''r42''' AS tsquery)
+        ORDER BY d.id DESC LIMIT 5000) c) r
+ORDER BY r.rank DESC, r.id DESC LIMIT 21;
+
+-- Previous behaviour for comparison: OR query, every match ranked
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT d.id, ts_rank(d.search_vector, CAST('''报销'' | ''销流'' | ''流程''' AS tsquery)) AS rank
+FROM documents d JOIN tenants t ON t.id = d.tenant_id
+WHERE t.tenant_id = 'bench' AND d.deleted = false
+  AND d.search_vector @@ CAST('''报销'' | ''销流'' | ''流程''' AS tsquery)
+ORDER BY rank DESC, d.id DESC LIMIT 21;
+
+ROLLBACK;
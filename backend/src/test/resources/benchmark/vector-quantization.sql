@@ -0,0 +1,136 @@
+-- Recall and latency of the quantized HNSW indexes (QuantizedVectorSearch).
+--
+--   psql -h localhost -U postgres -d knowledge_mgmt -f vector-quantization.sql
+--
+-- Needs the vector extension (0.7+ for halfvec and binary_quantize). Loads 200k clustered
+-- 768-dimension vectors for tenant 'bench' into a temporary copy of vector_store and computes
+-- the exact top 10 of 100 queries. It then builds the tenant's float, halfvec and binary
+-- indexes (app.vector-store.quantization none / halfvec / binary) and runs the same queries
+-- through each. The quantized ones use QuantizedVectorSearch's two-pass form: walk the index
+-- for candidates rows (topK * rerank-factor), rerank them by the float distance. Each reports
+-- recall@10, the batch time and the index size; raise candidates to see what binary needs.
+-- Everything runs in one transaction that is rolled back at the end.
+
+\set rows 200000
+\set clusters 200
+\set noise 0.6
+\set queries 100
+\set candidates 40
+
+\timing on
+BEGIN;
+
+SET LOCAL maintenance_work_mem = '2GB';
+
+CREATE TEMP TABLE bench_vector_store (LIKE vector_store INCLUDING DEFAULTS);
+
+CREATE TEMP TABLE bench_centroids AS
+SELECT c, array_agg(random() * 2 - 1 ORDER BY d) AS center
+FROM generate_series(1, :clusters) c, generate_series(1, 768) d
+GROUP BY c;
+
+CREATE FUNCTION pg_temp.bench_vector(center float8[], noise float8) RETURNS vector
+LANGUAGE sql VOLATILE AS $$
+    SELECT array_agg(center[d] + noise * (random() * 2 - 1) ORDER BY d)::vector
+    FROM generate_series(1, array_length(center, 1)) d
+$$;
+
+INSERT INTO bench_vector_store (id, content, metadata, embedding)
+SELECT gen_random_uuid(), 'chunk ' || g,
+       jsonb_build_object('tenantId', 'bench', 'documentId', g / 20, 'chunkIndex', g % 20),
+       pg_temp.bench_vector(c.center, :noise)
+FROM generate_series(1, :rows) g
+JOIN bench_centroids c ON c.c = 1 + g % :clusters;
+
+ANALYZE bench_vector_store;
+
+CREATE TEMP TABLE bench_queries AS
+SELECT q, pg_temp.bench_vector(c.center, :noise) AS embedding
+FROM generate_series(1, :queries) q
+JOIN bench_centroids c ON c.c = 1 + (q * 13) % :clusters;
+
+SELECT embedding::text AS query_vector FROM bench_queries WHERE q = 1 \gset
+
+-- Exact answer before any vector index exists
+CREATE TEMP TABLE bench_exact AS
+SELECT q.q, n.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT id FROM bench_vector_store
+    WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath
+    ORDER BY embedding <=> q.embedding LIMIT 10) n;
+
+SET LOCAL hnsw.ef_search = :candidates;
+
+-- none: float index, searched directly
+CREATE INDEX bench_vector_store_embedding_t_bench_idx ON bench_vector_store
+USING hnsw (embedding vector_cosine_ops)
+WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT *, embedding <=> CAST(:'query_vector' AS vector) AS distance FROM bench_vector_store
+WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath
+ORDER BY distance LIMIT 10;
+
+SELECT round(count(e.id) / (10.0 * :queries), 3) AS recall_at_10
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT id FROM bench_vector_store
+    WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath
+    ORDER BY embedding <=> q.embedding LIMIT 10) n
+LEFT JOIN bench_exact e ON e.q = q.q AND e.id = n.id;
+
+-- halfvec: 2-byte floats in the index, float rerank
+CREATE INDEX bench_vector_store_embedding_t_bench_hv_idx ON bench_vector_store
+USING hnsw ((embedding::halfvec(768)) halfvec_cosine_ops)
+WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT id, distance FROM (
+    SELECT id, embedding <=> CAST(:'query_vector' AS vector) AS distance
+    FROM (SELECT id, embedding FROM bench_vector_store
+          WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath
+          ORDER BY embedding::halfvec(768) <=> CAST(:'query_vector' AS halfvec(768))
+          LIMIT :candidates) candidates) reranked
+ORDER BY distance LIMIT 10;
+
+SELECT round(count(e.id) / (10.0 * :queries), 3) AS recall_at_10
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT id FROM (
+        SELECT id, embedding FROM bench_vector_store
+        WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath
+        ORDER BY embedding::halfvec(768) <=> CAST(q.embedding AS halfvec(768))
+        LIMIT :candidates) candidates
+    ORDER BY embedding <=> q.embedding LIMIT 10) n
+LEFT JOIN bench_exact e ON e.q = q.q AND e.id = n.id;
+
+-- binary: one bit per dimension in the index, Hamming walk, float rerank
+CREATE INDEX bench_vector_store_embedding_t_bench_bq_idx ON bench_vector_store
+USING hnsw ((binary_quantize(embedding)::bit(768)) bit_hamming_ops)
+WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT id, distance FROM (
+    SELECT id, embedding <=> CAST(:'query_vector' AS vector) AS distance
+    FROM (SELECT id, embedding FROM bench_vector_store
+          WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath
+          ORDER BY binary_quantize(embedding)::bit(768) <~> binary_quantize(CAST(:'query_vector' AS vector))
+          LIMIT :candidates) candidates) reranked
+ORDER BY distance LIMIT 10;
+
+SELECT round(count(e.id) / (10.0 * :queries), 3) AS recall_at_10
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT id FROM (
+        SELECT id, embedding FROM bench_vector_store
+        WHERE metadata::jsonb @@ '$.tenantId == "bench"'::jsonpath
+        ORDER BY binary_quantize(embedding)::bit(768) <~> binary_quantize(q.embedding)
+        LIMIT :candidates) candidates
+    ORDER BY embedding <=> q.embedding LIMIT 10) n
+LEFT JOIN bench_exact e ON e.q = q.q AND e.id = n.id;
+
+SELECT indexrelid::regclass AS index, pg_size_pretty(pg_relation_size(indexrelid)) AS size
+FROM pg_index WHERE indrelid = 'bench_vector_store'::regclass;
+
+ROLLBACK;
@@ -0,0 +1,119 @@
+-- Tenant-filtered vector search at 1M vectors (PgVectorStore query with the tenant filter).
+--
+--   psql -h localhost -U postgres -d knowledge_mgmt -f vector-tenant-filter.sql
+--
+-- Needs the vector extension. Loads tenant 'bench-a' (20k vectors) and 980k vectors for other
+-- tenants into a temporary copy of vector_store, all drawn around the same 200 cluster centres,
+-- so most of a query's nearest neighbours belong to other tenants. The same 50 queries are then
+-- run with the exact scan, the global HNSW index and the tenant's partial HNSW index
+-- (TenantVectorIndexService); each reports recall@10 against the exact scan and its latency.
+-- Building the global index over 1M rows dominates the run time; lower other_rows for a
+-- quick pass. Everything runs in one transaction that is rolled back at the end.
+
+\set tenant_rows 20000
+\set other_rows 980000
+\set other_tenants 49
+\set clusters 200
+\set noise 0.6
+\set queries 50
+
+\timing on
+BEGIN;
+
+SET LOCAL maintenance_work_mem = '4GB';
+
+CREATE TEMP TABLE bench_vector_store (LIKE vector_store INCLUDING DEFAULTS);
+
+CREATE TEMP TABLE bench_centroids AS
+SELECT c, array_agg(random() * 2 - 1 ORDER BY d) AS center
+FROM generate_series(1, :clusters) c, generate_series(1, 768) d
+GROUP BY c;
+
+CREATE FUNCTION pg_temp.bench_vector(center float8[], noise float8) RETURNS vector
+LANGUAGE sql VOLATILE AS $$
+    SELECT array_agg(center[d] + noise * (random() * 2 - 1) ORDER BY d)::vector
+    FROM generate_series(1, array_length(center, 1)) d
+$$;
+
+INSERT INTO bench_vector_store (id, content, metadata, embedding)
+SELECT gen_random_uuid(), 'chunk ' || g,
+       jsonb_build_object('tenantId', 'bench-a', 'documentId', g / 20, 'chunkIndex', g % 20),
+       pg_temp.bench_vector(c.center, :noise)
+FROM generate_series(1, :tenant_rows) g
+JOIN bench_centroids c ON c.c = 1 + g % :clusters;
+
+INSERT INTO bench_vector_store (id, content, metadata, embedding)
+SELECT gen_random_uuid(), 'chunk ' || g,
+       jsonb_build_object('tenantId', 'bench-' || (g % :other_tenants), 'documentId', g / 20,
+                          'chunkIndex', g % 20),
+       pg_temp.bench_vector(c.center, :noise)
+FROM generate_series(1, :other_rows) g
+JOIN bench_centroids c ON c.c = 1 + (g * 7) % :clusters;
+
+CREATE INDEX ON bench_vector_store USING gin (metadata jsonb_path_ops);
+ANALYZE bench_vector_store;
+
+CREATE TEMP TABLE bench_queries AS
+SELECT q, pg_temp.bench_vector(c.center, :noise) AS embedding
+FROM generate_series(1, :queries) q
+JOIN bench_centroids c ON c.c = 1 + (q * 13) % :clusters;
+
+SELECT embedding::text AS query_vector FROM bench_queries WHERE q = 1 \gset
+
+-- Exact answer before any vector index exists: the tenant's rows, sorted in full
+CREATE TEMP TABLE bench_exact AS
+SELECT q.q, n.id
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT id FROM bench_vector_store
+    WHERE metadata::jsonb @@ '$.tenantId == "bench-a"'::jsonpath
+    ORDER BY embedding <=> q.embedding LIMIT 10) n;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT *, embedding <=> CAST(:'query_vector' AS vector) AS distance FROM bench_vector_store
+WHERE embedding <=> CAST(:'query_vector' AS vector) < 0.7
+  AND metadata::jsonb @@ '$.tenantId == "bench-a"'::jsonpath
+ORDER BY distance LIMIT 10;
+
+-- Global index only (vector_store_embedding_idx): when the planner walks it, the tenant filter
+-- is applied to the hnsw.ef_search candidates, most of which belong to other tenants; when it
+-- falls back to the metadata GIN index, every tenant row is read and sorted
+CREATE INDEX bench_vector_store_embedding_idx ON bench_vector_store USING hnsw (embedding vector_cosine_ops);
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT *, embedding <=> CAST(:'query_vector' AS vector) AS distance FROM bench_vector_store
+WHERE embedding <=> CAST(:'query_vector' AS vector) < 0.7
+  AND metadata::jsonb @@ '$.tenantId == "bench-a"'::jsonpath
+ORDER BY distance LIMIT 10;
+
+SELECT round(count(e.id) / (10.0 * :queries), 3) AS recall_at_10, count(n.id) AS rows_returned
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT id FROM bench_vector_store
+    WHERE metadata::jsonb @@ '$.tenantId == "bench-a"'::jsonpath
+    ORDER BY embedding <=> q.embedding LIMIT 10) n
+LEFT JOIN bench_exact e ON e.q = q.q AND e.id = n.id;
+
+-- Per-tenant partial index, same predicate text as TenantVectorIndexService.tenantPredicate
+CREATE INDEX bench_vector_store_embedding_t_bench_a_idx ON bench_vector_store
+USING hnsw (embedding vector_cosine_ops)
+WHERE metadata::jsonb @@ '$.tenantId == "bench-a"'::jsonpath;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT *, embedding <=> CAST(:'query_vector' AS vector) AS distance FROM bench_vector_store
+WHERE embedding <=> CAST(:'query_vector' AS vector) < 0.7
+  AND metadata::jsonb @@ '$.tenantId == "bench-a"'::jsonpath
+ORDER BY distance LIMIT 10;
+
+SELECT round(count(e.id) / (10.0 * :queries), 3) AS recall_at_10, count(n.id) AS rows_returned
+FROM bench_queries q
+CROSS JOIN LATERAL (
+    SELECT id FROM bench_vector_store
+    WHERE metadata::jsonb @@ '$.tenantId == "bench-a"'::jsonpath
+    ORDER BY embedding <=> q.embedding LIMIT 10) n
+LEFT JOIN bench_exact e ON e.q = q.q AND e.id = n.id;
+
+SELECT indexrelid::regclass AS index, pg_size_pretty(pg_relation_size(indexrelid)) AS size
+FROM pg_index WHERE indrelid = 'bench_vector_store'::regclass;
+
+ROLLBACK;